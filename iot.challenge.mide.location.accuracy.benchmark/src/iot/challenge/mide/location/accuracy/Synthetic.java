@@ -0,0 +1,113 @@
+package iot.challenge.mide.location.accuracy;
+
+import java.util.Random;
+
+import iot.challenge.mide.location.accuracy.installation.Installation;
+import iot.challenge.mide.location.accuracy.installation.Point;
+import iot.challenge.mide.location.accuracy.installation.Scanner;
+import iot.challenge.mide.location.accuracy.simulation.SyntheticDataSet;
+import iot.challenge.mide.location.accuracy.simulation.services.EventSeries;
+import iot.challenge.mide.location.accuracy.simulation.services.InstallationService;
+
+/**
+ * Synthetic inputs for the benchmarks, scaled beyond the bundled dataset. They
+ * are deterministic: the same parameters produce the same inputs.
+ *
+ * Scanners are placed on a grid in a square room (mm.) and the rssi follows
+ * the log-distance path loss model with gaussian noise, as in the
+ * {@link SyntheticDataSet} data sets.
+ */
+public class Synthetic {
+
+	public static final int TXPOWER = -59;
+	public static final int SIDE = 10000;
+
+	private static final double PATH_LOSS_EXPONENT = 2.0;
+	private static final double NOISE = 4.0;
+	private static final long SEED = 42L;
+
+	private Synthetic() {
+		super();
+	}
+
+	/**
+	 * Returns an installation with 'scanners' scanners on a grid
+	 */
+	public static Installation installation(int scanners) {
+		return installation(0, scanners);
+	}
+
+	/**
+	 * Returns the installation of the site 'site' (its own id and scanners) with
+	 * 'scanners' scanners on a grid
+	 */
+	public static Installation installation(int site, int scanners) {
+		Installation installation = new Installation((site == 0) ? "synthetic" : "synthetic-" + site);
+		int columns = (int) Math.ceil(Math.sqrt(scanners));
+		int rows = (scanners + columns - 1) / columns;
+		for (int i = 0; i < scanners; i++) {
+			int x = (columns == 1) ? 0 : (i % columns) * SIDE / (columns - 1);
+			int y = (rows == 1) ? 0 : (i / columns) * SIDE / (rows - 1);
+			installation.addScanner(new Scanner(scannerAddr(site * scanners + i), new Point(x, y)));
+		}
+		return installation;
+	}
+
+	public static String scannerAddr(int index) {
+		return SyntheticDataSet.scannerAddr(index);
+	}
+
+	public static String beacon(int index) {
+		return "beacon-" + index;
+	}
+
+	/**
+	 * Returns the rssi of a beacon at 'distance' mm. of a scanner
+	 */
+	public static int rssi(double distance, Random random) {
+		return SyntheticDataSet.rssi(distance, TXPOWER, PATH_LOSS_EXPONENT, NOISE, random);
+	}
+
+	/**
+	 * Saves in 'service' the detections of 'beacons' static beacons by every
+	 * scanner of 'installation', one every 'period' ms. (with jitter) during
+	 * 'duration' ms.
+	 */
+	public static void record(InstallationService service, Installation installation, int beacons, long duration,
+			int period) {
+		record(service, installation, 0, beacons, duration, period);
+	}
+
+	/**
+	 * As {@link #record(InstallationService, Installation, int, long, int)}, with
+	 * the beacons numbered from 'first'
+	 */
+	public static void record(InstallationService service, Installation installation, int first, int beacons,
+			long duration, int period) {
+		Random random = new Random(SEED);
+		service.addInstallation(installation);
+		for (int b = first; b < first + beacons; b++) {
+			int x = random.nextInt(SIDE);
+			int y = random.nextInt(SIDE);
+			for (Scanner scanner : installation.getScanners()) {
+				EventSeries series = service.getEvents().getSeries(beacon(b), scanner.getAddr());
+				double distance = Math.hypot(x - scanner.getPosition().getX(), y - scanner.getPosition().getY());
+				for (long time = random.nextInt(period); time < duration; time += 1 + random.nextInt(2 * period))
+					series.add(time, rssi(distance, random), TXPOWER);
+			}
+		}
+	}
+
+	/**
+	 * Returns the detections of a beacon by a scanner, one every 'period' ms.
+	 * (with jitter) during 'duration' ms.
+	 */
+	public static EventSeries series(long duration, int period) {
+		Random random = new Random(SEED);
+		EventSeries series = new EventSeries();
+		double distance = 1000 + random.nextInt(SIDE);
+		for (long time = random.nextInt(period); time < duration; time += 1 + random.nextInt(2 * period))
+			series.add(time, rssi(distance, random), TXPOWER);
+		return series;
+	}
+}
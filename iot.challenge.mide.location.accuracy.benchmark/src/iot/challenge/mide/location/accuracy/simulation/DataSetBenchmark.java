@@ -0,0 +1,67 @@
+package iot.challenge.mide.location.accuracy.simulation;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Loading of the bundled dataset: the whole {@link DataSet} (binary
+ * recordings, converted in the setup if needed), the parsing of a text
+ * recording and the mapping of a binary one
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DataSetBenchmark {
+
+	@Param({ "../iot.challenge.mide.location.accuracy/dataset" })
+	public String dataset;
+
+	private File folder;
+	private File text;
+	private File binary;
+
+	@Setup
+	public void setup() throws Exception {
+		folder = new File(dataset);
+		new DataSet(folder);
+		for (File file : folder.listFiles()) {
+			if (file.getName().matches("x\\d+y\\d+\\.txt")) {
+				text = file;
+				binary = new File(folder, file.getName().replace(".txt", ".rec"));
+				break;
+			}
+		}
+		if (text == null || !binary.exists())
+			throw new IllegalArgumentException("No recordings in " + folder);
+	}
+
+	@Benchmark
+	public DataSet load() throws Exception {
+		return new DataSet(folder);
+	}
+
+	@Benchmark
+	public Recording parseText() throws Exception {
+		return RecordingReader.read(text);
+	}
+
+	@Benchmark
+	public Recording mapBinary() throws Exception {
+		return RecordingFile.map(binary);
+	}
+}
@@ -0,0 +1,75 @@
+package iot.challenge.mide.location.accuracy.simulation.services;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import iot.challenge.mide.location.accuracy.Synthetic;
+
+/**
+ * {@link InstallationService#getEventWindow(long, long, EventWindow)} over
+ * synthetic recordings of 'beacons' beacons and 'scanners' scanners. Each
+ * invocation is the next publication (the window slides one second).
+ * 'getSiteEventWindow' queries one of 'sites' installations, each with its
+ * own scanners and beacons
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventWindowBenchmark {
+
+	private static final long DURATION = 600000L;
+	private static final int PERIOD = 300;
+	private static final int WINDOW = 10000;
+	private static final int RATE = 1000;
+
+	@Param({ "1", "10", "100" })
+	public int beacons;
+
+	@Param({ "4", "16" })
+	public int scanners;
+
+	@Param({ "1", "10" })
+	public int sites;
+
+	private InstallationService service;
+	private String site;
+	private EventWindow window;
+	private long end;
+
+	@Setup
+	public void setup() {
+		service = new InstallationService();
+		for (int site = 0; site < sites; site++)
+			Synthetic.record(service, Synthetic.installation(site, scanners), site * beacons, beacons, DURATION,
+					PERIOD);
+		site = Synthetic.installation(0, scanners).getId();
+		window = new EventWindow();
+		end = WINDOW;
+	}
+
+	@Benchmark
+	public EventWindow getEventWindow() {
+		end = (end + RATE > DURATION) ? WINDOW : end + RATE;
+		return service.getEventWindow(end - WINDOW, end, window);
+	}
+
+	@Benchmark
+	public EventWindow getSiteEventWindow() {
+		end = (end + RATE > DURATION) ? WINDOW : end + RATE;
+		return service.getEventWindow(site, end - WINDOW, end, window);
+	}
+}
@@ -0,0 +1,124 @@
+package iot.challenge.mide.location.accuracy.simulation.services;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import iot.challenge.mide.location.accuracy.Synthetic;
+import iot.challenge.mide.location.accuracy.simulation.BeaconEvent;
+import iot.challenge.mide.location.accuracy.simulation.BluetoothLeBeacon;
+
+/**
+ * {@link InstallationService#saveEvents(String, String, List)} of messages of
+ * {@value #EVENTS} events, from 'scanners' scanners detecting {@value #BEACONS}
+ * beacons. The threads share the service and each one publishes for its own
+ * scanners, as the scanners of an installation do. Run with '-t' threads to
+ * measure how ingestion scales with the cores
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IngestBenchmark {
+
+	private static final int EVENTS = 4;
+	private static final int BEACONS = 16;
+
+	@Param({ "16", "256" })
+	public int scanners;
+
+	private InstallationService service;
+	private AtomicInteger threads;
+
+	@Setup
+	public void setup() {
+		service = new InstallationService();
+		service.addInstallation(Synthetic.installation(scanners));
+		threads = new AtomicInteger();
+	}
+
+	// The events of an iteration are not kept for the next one
+	@TearDown(Level.Iteration)
+	public void clear() {
+		service.getEvents().clear();
+	}
+
+	/**
+	 * Scanners of a thread and the rssis of its messages
+	 */
+	@State(Scope.Thread)
+	public static class Publisher {
+
+		private String[] scanners;
+		private String[] beacons;
+		private int[] rssis;
+		private int next;
+		private long time;
+
+		@Setup
+		public void setup(IngestBenchmark benchmark, BenchmarkParams params) {
+			int thread = benchmark.threads.getAndIncrement();
+			List<String> own = new ArrayList<>();
+			for (int i = thread; i < benchmark.scanners; i += params.getThreads())
+				own.add(Synthetic.scannerAddr(i));
+			if (own.isEmpty())
+				own.add(Synthetic.scannerAddr(thread % benchmark.scanners));
+			scanners = own.toArray(new String[own.size()]);
+
+			beacons = new String[BEACONS];
+			for (int i = 0; i < BEACONS; i++)
+				beacons[i] = Synthetic.beacon(i);
+
+			Random random = new Random(thread);
+			rssis = new int[scanners.length * BEACONS];
+			for (int i = 0; i < rssis.length; i++)
+				rssis[i] = Synthetic.rssi(1000 + random.nextInt(Synthetic.SIDE), random);
+		}
+
+		// Next message (a scanner and a beacon in turn), as it's decoded
+		List<BeaconEvent> next() {
+			int message = next;
+			next = (message + 1 == rssis.length) ? 0 : message + 1;
+			if (message == 0)
+				time += EVENTS;
+			List<BeaconEvent> result = new ArrayList<>(EVENTS);
+			for (int i = 0; i < EVENTS; i++)
+				result.add(new BeaconEvent(new BluetoothLeBeacon(rssis[message], Synthetic.TXPOWER), time + i));
+			return result;
+		}
+
+		String scanner() {
+			return scanners[next / BEACONS];
+		}
+
+		String beacon() {
+			return beacons[next % BEACONS];
+		}
+	}
+
+	@Benchmark
+	public void saveEvents(Publisher publisher) {
+		String scanner = publisher.scanner();
+		String beacon = publisher.beacon();
+		service.saveEvents(scanner, beacon, publisher.next());
+	}
+}
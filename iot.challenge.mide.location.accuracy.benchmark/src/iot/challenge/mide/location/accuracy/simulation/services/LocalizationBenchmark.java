@@ -0,0 +1,79 @@
+package iot.challenge.mide.location.accuracy.simulation.services;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import iot.challenge.mide.location.accuracy.Synthetic;
+import iot.challenge.mide.location.accuracy.trilaterization.DistanceAlgorithm;
+import iot.challenge.mide.location.accuracy.trilaterization.LeastSquaresAlgorithm;
+
+/**
+ * {@link LocationService#localization(long, LocationBatch)} of synthetic
+ * recordings of 'beacons' beacons and 16 scanners: the time to locate every
+ * beacon of a publication. Each invocation is the next publication. Run with
+ * '-jvmArgs -Djava.util.concurrent.ForkJoinPool.common.parallelism=1' to
+ * compare with a single core
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LocalizationBenchmark {
+
+	private static final long DURATION = 120000L;
+	private static final int PERIOD = 300;
+	private static final int SCANNERS = 16;
+	private static final int WINDOW = 10000;
+	private static final int RATE = 1000;
+
+	@Param({ "10", "100", "1000" })
+	public int beacons;
+
+	@Param({ "NonLinear", "Tracking" })
+	public LeastSquaresAlgorithm algorithm;
+
+	private LocationService service;
+	private LocationBatch batch;
+	private long current;
+
+	@Setup
+	public void setup() {
+		InstallationService installationService = new InstallationService();
+		Synthetic.record(installationService, Synthetic.installation(SCANNERS), beacons, DURATION, PERIOD);
+
+		Properties properties = new Properties();
+		properties.setProperty(LocationService.RETENTION_TIME, "0");
+		properties.setProperty(LocationService.PUBLICATION_RATE, Integer.toString(RATE));
+		properties.setProperty(LocationService.DELAY, "0");
+		properties.setProperty(LocationService.SCANNING_WINDOW, Integer.toString(WINDOW));
+		properties.setProperty(LocationService.ATTENUATION, "0.5");
+		properties.setProperty(LocationService.CUTOFF_RATE, "0.9");
+		properties.setProperty(LocationService.INCREMENTAL, "true");
+
+		PositioningService positioningService = new PositioningService(installationService,
+				DistanceAlgorithm.Accuracy, algorithm);
+		service = new LocationService(installationService, positioningService, properties);
+		batch = new LocationBatch();
+		current = WINDOW;
+	}
+
+	@Benchmark
+	public LocationBatch localization() {
+		current = (current + RATE > DURATION) ? WINDOW : current + RATE;
+		return service.localization(current, batch);
+	}
+}
@@ -0,0 +1,131 @@
+package iot.challenge.mide.location.accuracy.simulation.services;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import iot.challenge.mide.location.accuracy.Synthetic;
+import iot.challenge.mide.location.accuracy.simulation.BeaconEvent;
+import iot.challenge.mide.location.accuracy.simulation.BluetoothLeBeacon;
+import iot.challenge.mide.location.accuracy.trilaterization.DistanceAlgorithm;
+import iot.challenge.mide.location.accuracy.trilaterization.LeastSquaresAlgorithm;
+
+/**
+ * {@link LocationService#localization(long, LocationBatch)} of a synthetic
+ * recording of {@value #BEACONS} beacons and {@value #SCANNERS} scanners while
+ * {@value #PUBLISHERS} threads save messages of other beacons as fast as they
+ * can. Compare 'localization' with {@link LocalizationBenchmark} to see the
+ * effect of the ingestion on the time to locate the beacons (with a core for
+ * each thread, otherwise the threads just share the cores)
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LocalizationUnderIngestBenchmark {
+
+	private static final long DURATION = 120000L;
+	private static final int PERIOD = 300;
+	private static final int BEACONS = 100;
+	private static final int SCANNERS = 16;
+	private static final int PUBLISHERS = 3;
+	private static final int WINDOW = 10000;
+	private static final int RATE = 1000;
+	private static final int EVENTS = 4;
+
+	private InstallationService installationService;
+	private LocationService service;
+	private LocationBatch batch;
+	private long current;
+	private AtomicInteger publishers;
+
+	@Setup
+	public void setup() {
+		installationService = new InstallationService();
+		Synthetic.record(installationService, Synthetic.installation(SCANNERS), BEACONS, DURATION, PERIOD);
+
+		Properties properties = new Properties();
+		properties.setProperty(LocationService.RETENTION_TIME, "0");
+		properties.setProperty(LocationService.PUBLICATION_RATE, Integer.toString(RATE));
+		properties.setProperty(LocationService.DELAY, "0");
+		properties.setProperty(LocationService.SCANNING_WINDOW, Integer.toString(WINDOW));
+		properties.setProperty(LocationService.ATTENUATION, "0.5");
+		properties.setProperty(LocationService.CUTOFF_RATE, "0.9");
+		properties.setProperty(LocationService.INCREMENTAL, "true");
+
+		PositioningService positioningService = new PositioningService(installationService,
+				DistanceAlgorithm.Accuracy, LeastSquaresAlgorithm.NonLinear);
+		service = new LocationService(installationService, positioningService, properties);
+		batch = new LocationBatch();
+		current = WINDOW;
+		publishers = new AtomicInteger();
+	}
+
+	/**
+	 * Beacons of a publisher. Its events are after the recording, and the old
+	 * ones are evicted to bound the memory
+	 */
+	@State(Scope.Thread)
+	public static class Publisher {
+
+		private static final int RETAINED = 1 << 14;
+
+		private String[] scanners;
+		private String beacon;
+		private int next;
+		private long time;
+
+		@Setup
+		public void setup(LocalizationUnderIngestBenchmark benchmark) {
+			scanners = new String[SCANNERS];
+			for (int i = 0; i < SCANNERS; i++)
+				scanners[i] = Synthetic.scannerAddr(i);
+			beacon = "publisher-" + benchmark.publishers.getAndIncrement();
+			time = DURATION;
+		}
+	}
+
+	@Benchmark
+	@Group("ingest")
+	@GroupThreads(1)
+	public LocationBatch localization() {
+		current = (current + RATE > DURATION) ? WINDOW : current + RATE;
+		return service.localization(current, batch);
+	}
+
+	@Benchmark
+	@Group("ingest")
+	@GroupThreads(PUBLISHERS)
+	public void saveEvents(Publisher publisher) {
+		String scanner = publisher.scanners[publisher.next];
+		publisher.next = (publisher.next + 1) % SCANNERS;
+		if (publisher.next == 0)
+			publisher.time += EVENTS;
+
+		List<BeaconEvent> events = new ArrayList<>(EVENTS);
+		for (int i = 0; i < EVENTS; i++)
+			events.add(new BeaconEvent(new BluetoothLeBeacon(-70, Synthetic.TXPOWER), publisher.time + i));
+		installationService.saveEvents(scanner, publisher.beacon, events);
+
+		if (publisher.time % Publisher.RETAINED == 0)
+			installationService.getEvents().write(publisher.beacon, scanner,
+					series -> series.evict(publisher.time - Publisher.RETAINED));
+	}
+}
@@ -0,0 +1,93 @@
+package iot.challenge.mide.location.accuracy.simulation.services;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import iot.challenge.mide.location.accuracy.Synthetic;
+
+/**
+ * {@link LocationService#resumeBeaconEvents} of a synthetic series with about
+ * 'events' events per window, in batch mode (the whole window each time) and
+ * in incremental mode ({@link SlidingWindow}). Each invocation is the next
+ * publication (the window slides one second)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResumeBeaconEventsBenchmark {
+
+	private static final long DURATION = 3600000L;
+	private static final int WINDOW = 10000;
+	private static final int RATE = 1000;
+	private static final String SCANNER = Synthetic.scannerAddr(0);
+
+	@Param({ "30", "300", "3000" })
+	public int events;
+
+	@Param({ "0.5", "0" })
+	public String attenuation;
+
+	private EventSnapshot snapshot;
+	private LocationService service;
+	private SlidingWindow slidingWindow;
+	private ScannerResumes resumes;
+	private long end;
+
+	@Setup
+	public void setup() {
+		snapshot = Synthetic.series(DURATION, Math.max(1, WINDOW / events)).snapshot();
+
+		Properties properties = new Properties();
+		properties.setProperty(LocationService.RETENTION_TIME, "60");
+		properties.setProperty(LocationService.PUBLICATION_RATE, Integer.toString(RATE));
+		properties.setProperty(LocationService.DELAY, "0");
+		properties.setProperty(LocationService.SCANNING_WINDOW, Integer.toString(WINDOW));
+		properties.setProperty(LocationService.ATTENUATION, attenuation);
+		properties.setProperty(LocationService.CUTOFF_RATE, "0.9");
+		service = new LocationService(new InstallationService(), null, properties);
+
+		slidingWindow = new SlidingWindow();
+		resumes = new ScannerResumes();
+		end = WINDOW;
+	}
+
+	private long next() {
+		end = (end + RATE > DURATION) ? WINDOW : end + RATE;
+		return end;
+	}
+
+	@Benchmark
+	public ScannerResumes batch() {
+		long end = next();
+		long start = end - WINDOW;
+		resumes.clear();
+		service.resumeBeaconEvents(SCANNER, snapshot, snapshot.lowerBound(start), snapshot.upperBound(end), start,
+				end, resumes);
+		return resumes;
+	}
+
+	@Benchmark
+	public ScannerResumes incremental() {
+		long end = next();
+		long start = end - WINDOW;
+		slidingWindow.moveTo(snapshot, snapshot.lowerBound(start), snapshot.upperBound(end));
+		resumes.clear();
+		service.resumeBeaconEvents(SCANNER, slidingWindow, start, end, resumes);
+		return resumes;
+	}
+}
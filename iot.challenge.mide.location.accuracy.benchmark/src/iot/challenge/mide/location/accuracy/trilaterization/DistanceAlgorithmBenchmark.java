@@ -0,0 +1,85 @@
+package iot.challenge.mide.location.accuracy.trilaterization;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import iot.challenge.mide.location.accuracy.Synthetic;
+import iot.challenge.mide.location.accuracy.simulation.BeaconEvent;
+import iot.challenge.mide.location.accuracy.simulation.BluetoothLeBeacon;
+
+/**
+ * {@link DistanceAlgorithm#computeDistance(BeaconEvent, DistanceUnits)} of
+ * synthetic events (time per event), compared with the batch API and with the
+ * formula that fills the lookup tables
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DistanceAlgorithmBenchmark {
+
+	private static final int EVENTS = 1024;
+
+	@Param({ "Linear", "Accuracy" })
+	public DistanceAlgorithm algorithm;
+
+	private BeaconEvent[] events;
+	private short[] rssis;
+	private byte[] txpowers;
+	private double[] distances;
+
+	@Setup
+	public void setup() {
+		Random random = new Random(42L);
+		events = new BeaconEvent[EVENTS];
+		rssis = new short[EVENTS];
+		txpowers = new byte[EVENTS];
+		distances = new double[EVENTS];
+		for (int i = 0; i < EVENTS; i++) {
+			int rssi = Synthetic.rssi(random.nextInt(Synthetic.SIDE), random);
+			events[i] = new BeaconEvent(new BluetoothLeBeacon(rssi, Synthetic.TXPOWER), i);
+			rssis[i] = (short) rssi;
+			txpowers[i] = (byte) Synthetic.TXPOWER;
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(EVENTS)
+	public double computeDistance() {
+		double sum = 0;
+		for (BeaconEvent event : events)
+			sum += algorithm.computeDistance(event, DistanceUnits.MILIMETERS);
+		return sum;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(EVENTS)
+	public double[] computeDistances() {
+		algorithm.computeDistances(rssis, txpowers, distances, DistanceUnits.MILIMETERS);
+		return distances;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(EVENTS)
+	public double formula() {
+		double sum = 0;
+		for (int i = 0; i < EVENTS; i++)
+			sum += algorithm.distance(rssis[i], txpowers[i]);
+		return sum;
+	}
+}
@@ -0,0 +1,108 @@
+package iot.challenge.mide.location.accuracy.trilaterization;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import iot.challenge.mide.location.accuracy.Synthetic;
+import iot.challenge.mide.location.accuracy.installation.Installation;
+import iot.challenge.mide.location.accuracy.installation.Point;
+import iot.challenge.mide.location.accuracy.installation.Scanner;
+
+/**
+ * {@link LeastSquaresAlgorithm#computePosition(double[][], double[])} of
+ * synthetic fixes: noisy distances from 'scanners' scanners to random points.
+ * Each invocation solves the next fix, returning a {@link Point} or writing the
+ * coordinates in an array. 'computeTrackedCoordinates' seeds the fix with a
+ * position near the real one, as the previous fix of a tracked beacon;
+ * 'computeWorkspaceCoordinates' reuses a {@link TrilaterationFunction}
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LeastSquaresAlgorithmBenchmark {
+
+	private static final int FIXES = 256;
+	private static final double NOISE = 500d;
+	private static final double MOVEMENT = 100d;
+
+	@Param({ "Linear", "NonLinear", "ClosedForm", "Tracking" })
+	public LeastSquaresAlgorithm algorithm;
+
+	@Param({ "4", "16" })
+	public int scanners;
+
+	private double[][] positions;
+	private double[][] distances;
+	private double[][] seeds;
+	private double[] coordinates;
+	private TrilaterationFunction workspace;
+	private int next;
+
+	@Setup
+	public void setup() {
+		Random random = new Random(42L);
+		Installation installation = Synthetic.installation(scanners);
+		positions = new double[scanners][];
+		for (int i = 0; i < scanners; i++) {
+			Point position = installation.getScanners().get(i).getPosition();
+			positions[i] = new double[] { position.getX(), position.getY() };
+		}
+
+		distances = new double[FIXES][scanners];
+		seeds = new double[FIXES][];
+		for (int f = 0; f < FIXES; f++) {
+			int x = random.nextInt(Synthetic.SIDE);
+			int y = random.nextInt(Synthetic.SIDE);
+			seeds[f] = new double[] { x + random.nextGaussian() * MOVEMENT, y + random.nextGaussian() * MOVEMENT };
+			for (int i = 0; i < scanners; i++) {
+				Scanner scanner = installation.getScanners().get(i);
+				double distance = Math.hypot(x - scanner.getPosition().getX(), y - scanner.getPosition().getY());
+				distances[f][i] = Math.max(1d, distance + random.nextGaussian() * NOISE);
+			}
+		}
+		coordinates = new double[2];
+		workspace = new TrilaterationFunction();
+		next = 0;
+	}
+
+	@Benchmark
+	public Point computePosition() {
+		next = (next + 1) % FIXES;
+		return algorithm.computePosition(positions, distances[next]);
+	}
+
+	@Benchmark
+	public double[] computeCoordinates() {
+		next = (next + 1) % FIXES;
+		algorithm.computePosition(positions, distances[next], coordinates);
+		return coordinates;
+	}
+
+	@Benchmark
+	public int computeTrackedCoordinates() {
+		next = (next + 1) % FIXES;
+		return algorithm.computePosition(positions, distances[next], seeds[next], coordinates);
+	}
+
+	@Benchmark
+	public double[] computeWorkspaceCoordinates() {
+		next = (next + 1) % FIXES;
+		algorithm.computePosition(workspace.set(positions, distances[next]), coordinates);
+		return coordinates;
+	}
+}
@@ -0,0 +1,46 @@
+package iot.challenge.mide.location.accuracy;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Properties;
+
+import iot.challenge.mide.location.accuracy.simulation.SyntheticDataSet;
+
+/**
+ * Synthetic data set generator. Writes the data set described in the generator
+ * file (by default {@value #SYNTHETIC}, see {@link SyntheticDataSet}) to its
+ * 'folder', to be used as the {@link Main#CONFIG} dataset, by {@link Replay}
+ * or by the benchmarks
+ */
+public class Generate {
+
+	public static final String SYNTHETIC = "synthetic.properties";
+
+	static final String FOLDER = "folder";
+
+	public static void main(String[] args) throws IOException {
+		FileInputStream input = null;
+		try {
+			Properties properties = new Properties();
+			input = new FileInputStream((args.length > 0) ? args[0] : SYNTHETIC);
+			properties.load(input);
+
+			long start = System.nanoTime();
+			SyntheticDataSet dataSet = new SyntheticDataSet(properties);
+			File folder = new File(properties.getProperty(FOLDER));
+			dataSet.write(folder);
+
+			System.out.format("%d scanners, %d beacons written to %s in %d ms.%n",
+					dataSet.getInstallation().getScanners().size(), dataSet.getPoints().size(), folder,
+					(System.nanoTime() - start) / 1000000);
+
+		} catch (Exception e) {
+			System.err.println("Generation aborted");
+			e.printStackTrace();
+		} finally {
+			if (input != null)
+				input.close();
+		}
+	}
+}
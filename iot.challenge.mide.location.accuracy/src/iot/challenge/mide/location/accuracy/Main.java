@@ -3,9 +3,9 @@ package iot.challenge.mide.location.accuracy;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
+import java.util.stream.Collectors;
 
 import iot.challenge.mide.location.accuracy.installation.Installation;
 import iot.challenge.mide.location.accuracy.installation.Point;
@@ -18,9 +18,9 @@ public class Main {
 
 	public static final String CONFIG = "config.properties";
 
-	private static final String DATASET = "dataset";
-	private static final String DISTANCE_ALGORITHM = "distance.algorithm";
-	private static final String LEAST_SQUARES_ALGORITHM = "least.squares.algorithm";
+	static final String DATASET = "dataset";
+	static final String DISTANCE_ALGORITHM = "distance.algorithm";
+	static final String LEAST_SQUARES_ALGORITHM = "least.squares.algorithm";
 
 	public static void main(String[] args) throws IOException {
 		FileInputStream input = null;
@@ -34,7 +34,7 @@ public class Main {
 			LeastSquaresAlgorithm leastSquaresAlgorithm = LeastSquaresAlgorithm
 					.valueOf(properties.getProperty(LEAST_SQUARES_ALGORITHM));
 
-			execute(dataset, distanceAlgorithm, leastSquaresAlgorithm);
+			execute(dataset, distanceAlgorithm, leastSquaresAlgorithm, properties);
 
 		} catch (Exception e) {
 			System.err.println("Execution aborted");
@@ -45,7 +45,7 @@ public class Main {
 		}
 	}
 
-	private static DataSet loadDataSet(String folder) throws Exception {
+	static DataSet loadDataSet(String folder) throws Exception {
 		File dataSetFolder = new File(folder);
 		return new DataSet(dataSetFolder);
 	}
@@ -53,15 +53,18 @@ public class Main {
 	private static void execute(
 			DataSet dataSet,
 			DistanceAlgorithm distanceAlgorithm,
-			LeastSquaresAlgorithm leastSquaresAlgorithm) {
-
-		Map<Point, Simulation> simulations = new HashMap<>();
+			LeastSquaresAlgorithm leastSquaresAlgorithm,
+			Properties properties) {
 
+		// Simulations are independent: they run in parallel on the common ForkJoin pool
 		Installation installation = dataSet.getInstallation();
-		dataSet.getRecordings().forEach((p, r) -> {
-			simulations.put(p, new Simulation(installation, p, r, distanceAlgorithm, leastSquaresAlgorithm));
-			simulations.get(p).execute();
-		});
+		Map<Point, Simulation> simulations = dataSet.getRecordings().entrySet().parallelStream()
+				.collect(Collectors.toMap(Map.Entry::getKey, it -> {
+					Simulation simulation = new Simulation(installation, it.getKey(), it.getValue(),
+							distanceAlgorithm, leastSquaresAlgorithm, properties);
+					simulation.execute();
+					return simulation;
+				}));
 
 		displayResults(simulations);
 	}
@@ -70,6 +73,9 @@ public class Main {
 		simulations.forEach((p, s) -> System.out.format(p + ": %.3f m.%n", s.getError()));
 		double am = simulations.values().stream().mapToDouble(Simulation::getError).sum() / simulations.values().size();
 		System.out.format("Mean error: %.3f m.%n", am);
+		double iterations = simulations.values().stream().mapToDouble(Simulation::getIterations).average().orElse(0);
+		if (iterations > 0)
+			System.out.format("Mean iterations: %.2f%n", iterations);
 	}
 
 }
@@ -0,0 +1,65 @@
+package iot.challenge.mide.location.accuracy;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Properties;
+
+import iot.challenge.mide.location.accuracy.installation.Point;
+import iot.challenge.mide.location.accuracy.live.ReplayDriver;
+import iot.challenge.mide.location.accuracy.simulation.DataSet;
+import iot.challenge.mide.location.accuracy.simulation.Recording;
+import iot.challenge.mide.location.accuracy.simulation.services.InstallationService;
+import iot.challenge.mide.location.accuracy.simulation.services.LocationService;
+import iot.challenge.mide.location.accuracy.simulation.services.PositioningService;
+import iot.challenge.mide.location.accuracy.trilaterization.DistanceAlgorithm;
+import iot.challenge.mide.location.accuracy.trilaterization.LeastSquaresAlgorithm;
+import iot.challenge.mide.location.accuracy.trilaterization.TrackingLeastSquaresSolver;
+
+/**
+ * Load test. Replays every recording of the dataset through the live
+ * localization ({@link ReplayDriver}), each one as beacon 'x&lt;X&gt;y&lt;Y&gt;',
+ * and prints what the gateway sustained. The speed, the copies of each
+ * recording and the batch are the 'replay.*' keys of {@link Main#CONFIG}; the
+ * speed and the copies can be given as arguments too ('speed copies'). Increase
+ * them until windows are dropped or the lag grows to find the saturation point
+ */
+public class Replay {
+
+	public static void main(String[] args) throws IOException {
+		try {
+			Properties properties = new Properties();
+			try (FileInputStream input = new FileInputStream(Main.CONFIG)) {
+				properties.load(input);
+			}
+			if (args.length > 0)
+				properties.setProperty(ReplayDriver.SPEED, args[0]);
+			if (args.length > 1)
+				properties.setProperty(ReplayDriver.COPIES, args[1]);
+
+			DataSet dataSet = Main.loadDataSet(properties.getProperty(Main.DATASET));
+			DistanceAlgorithm distanceAlgorithm = DistanceAlgorithm.valueOf(properties.getProperty(Main.DISTANCE_ALGORITHM));
+			LeastSquaresAlgorithm leastSquaresAlgorithm = LeastSquaresAlgorithm
+					.valueOf(properties.getProperty(Main.LEAST_SQUARES_ALGORITHM));
+
+			InstallationService installationService = new InstallationService();
+			installationService.addInstallation(dataSet.getInstallation());
+			PositioningService positioningService = new PositioningService(installationService, distanceAlgorithm,
+					leastSquaresAlgorithm);
+			positioningService.setTrackingSolver(TrackingLeastSquaresSolver.fromProperties(properties));
+			LocationService locationService = new LocationService(installationService, positioningService,
+					properties);
+
+			ReplayDriver driver = new ReplayDriver(installationService, locationService, properties);
+			for (Map.Entry<Point, Recording> entry : dataSet.getRecordings().entrySet())
+				driver.addRecording("x" + entry.getKey().getX() + "y" + entry.getKey().getY(), entry.getValue());
+			driver.replay();
+
+			System.out.println(driver);
+
+		} catch (Exception e) {
+			System.err.println("Replay aborted");
+			e.printStackTrace();
+		}
+	}
+}
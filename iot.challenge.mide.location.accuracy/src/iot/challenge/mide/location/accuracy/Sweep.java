@@ -0,0 +1,186 @@
+package iot.challenge.mide.location.accuracy;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import iot.challenge.mide.location.accuracy.installation.Installation;
+import iot.challenge.mide.location.accuracy.simulation.DataSet;
+import iot.challenge.mide.location.accuracy.simulation.Simulation;
+import iot.challenge.mide.location.accuracy.trilaterization.DistanceAlgorithm;
+import iot.challenge.mide.location.accuracy.trilaterization.LeastSquaresAlgorithm;
+
+/**
+ * Parameter sweep. Evaluates every combination of the values given in the
+ * sweep file (by default {@value #SWEEP}) over the dataset, which is loaded
+ * once, and prints the combinations ranked by mean error.
+ *
+ * Each key of the sweep file is a key of {@link Main#CONFIG} with a list of
+ * values ("Linear,Accuracy") or an inclusive range ("5000:15000:2500", from, to
+ * and step). The keys not swept take their value from {@link Main#CONFIG}.
+ */
+public class Sweep {
+
+	public static final String SWEEP = "sweep.properties";
+
+	private static final String LIST_SEPARATOR = ",";
+	private static final String RANGE_SEPARATOR = ":";
+
+	public static void main(String[] args) throws IOException {
+		try {
+			Properties base = load(Main.CONFIG);
+			Properties sweep = load((args.length > 0) ? args[0] : SWEEP);
+
+			DataSet dataSet = Main.loadDataSet(base.getProperty(Main.DATASET));
+			List<Properties> combinations = combinations(base, values(sweep));
+			System.out.format("Combinations: %d%n", combinations.size());
+
+			List<Result> results = combinations.parallelStream()
+					.map(it -> evaluate(dataSet, it))
+					.sorted(Comparator.comparingDouble(Result::getError).thenComparingLong(Result::getTime))
+					.collect(Collectors.toList());
+
+			displayResults(sweep, results);
+
+		} catch (Exception e) {
+			System.err.println("Sweep aborted");
+			e.printStackTrace();
+		}
+	}
+
+	private static Properties load(String file) throws IOException {
+		Properties properties = new Properties();
+		try (FileInputStream input = new FileInputStream(file)) {
+			properties.load(input);
+		}
+		return properties;
+	}
+
+	// Key -> Values, sorted by key
+	private static Map<String, List<String>> values(Properties sweep) {
+		Map<String, List<String>> result = new TreeMap<>();
+		sweep.stringPropertyNames().forEach(key -> result.put(key, parseValues(sweep.getProperty(key))));
+		return result;
+	}
+
+	private static List<String> parseValues(String value) {
+		List<String> result = new ArrayList<>();
+		for (String item : value.split(LIST_SEPARATOR)) {
+			item = item.trim();
+			if (item.contains(RANGE_SEPARATOR))
+				result.addAll(parseRange(item));
+			else if (!item.isEmpty())
+				result.add(item);
+		}
+		if (result.isEmpty())
+			throw new IllegalArgumentException("No values: " + value);
+		return result;
+	}
+
+	// Decimal arithmetic, so steps like 0.1 don't accumulate rounding errors
+	private static List<String> parseRange(String range) {
+		String[] parts = range.split(RANGE_SEPARATOR);
+		if (parts.length != 3)
+			throw new IllegalArgumentException("Malformed range: " + range);
+
+		BigDecimal from = new BigDecimal(parts[0].trim());
+		BigDecimal to = new BigDecimal(parts[1].trim());
+		BigDecimal step = new BigDecimal(parts[2].trim());
+		if (step.signum() <= 0 || from.compareTo(to) > 0)
+			throw new IllegalArgumentException("Malformed range: " + range);
+
+		List<String> result = new ArrayList<>();
+		for (BigDecimal value = from; value.compareTo(to) <= 0; value = value.add(step))
+			result.add(value.toPlainString());
+		return result;
+	}
+
+	// Cartesian product of the values, over the base configuration
+	private static List<Properties> combinations(Properties base, Map<String, List<String>> values) {
+		List<Properties> result = new ArrayList<>();
+		result.add(base);
+		for (Map.Entry<String, List<String>> entry : values.entrySet()) {
+			List<Properties> combinations = new ArrayList<>(result.size() * entry.getValue().size());
+			for (Properties combination : result) {
+				for (String value : entry.getValue()) {
+					Properties properties = new Properties();
+					properties.putAll(combination);
+					properties.setProperty(entry.getKey(), value);
+					combinations.add(properties);
+				}
+			}
+			result = combinations;
+		}
+		return result;
+	}
+
+	private static Result evaluate(DataSet dataSet, Properties properties) {
+		long start = System.nanoTime();
+
+		DistanceAlgorithm distanceAlgorithm = DistanceAlgorithm.valueOf(properties.getProperty(Main.DISTANCE_ALGORITHM));
+		LeastSquaresAlgorithm leastSquaresAlgorithm = LeastSquaresAlgorithm
+				.valueOf(properties.getProperty(Main.LEAST_SQUARES_ALGORITHM));
+
+		Installation installation = dataSet.getInstallation();
+		double error = dataSet.getRecordings().entrySet().stream()
+				.mapToDouble(it -> {
+					Simulation simulation = new Simulation(installation, it.getKey(), it.getValue(),
+							distanceAlgorithm, leastSquaresAlgorithm, properties);
+					simulation.execute();
+					return simulation.getError();
+				})
+				.average()
+				.orElse(Double.NaN);
+
+		return new Result(properties, error, (System.nanoTime() - start) / 1000000L);
+	}
+
+	private static void displayResults(Properties sweep, List<Result> results) {
+		List<String> keys = new ArrayList<>(new TreeSet<>(sweep.stringPropertyNames()));
+
+		System.out.format("%6s %10s %10s  %s%n", "Rank", "Error (m)", "Time (ms)", "Parameters");
+		int rank = 1;
+		for (Result result : results) {
+			String values = keys.stream()
+					.map(key -> key + "=" + result.getProperties().getProperty(key))
+					.collect(Collectors.joining(" "));
+			System.out.format("%6d %10.3f %10d  %s%n", rank++, result.getError(), result.getTime(), values);
+		}
+	}
+
+	/**
+	 * Evaluation of a combination
+	 */
+	public static class Result {
+
+		private final Properties properties;
+		private final double error;
+		private final long time;
+
+		public Result(Properties properties, double error, long time) {
+			this.properties = properties;
+			this.error = error;
+			this.time = time;
+		}
+
+		public Properties getProperties() {
+			return properties;
+		}
+
+		public double getError() {
+			return error;
+		}
+
+		public long getTime() {
+			return time;
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package iot.challenge.mide.location.accuracy.live;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-process stand-in of an MQTT broker and its client. A message published
+ * is delivered, in the publisher's thread, to the listeners if its topic
+ * matches a subscription. Retained messages and qos are not simulated
+ */
+public class InProcessBroker implements MessageService {
+
+	private static final String LEVEL_SEPARATOR = "/";
+	private static final String SINGLE_LEVEL = "+";
+	private static final String MULTI_LEVEL = "#";
+
+	private List<MessageListener> listeners;
+	private Set<String> subscriptions;
+	private AtomicInteger messageId;
+
+	public InProcessBroker() {
+		super();
+		listeners = new CopyOnWriteArrayList<>();
+		subscriptions = ConcurrentHashMap.newKeySet();
+		messageId = new AtomicInteger();
+	}
+
+	@Override
+	public void addListener(MessageListener listener) {
+		listeners.add(listener);
+	}
+
+	@Override
+	public void removeListener(MessageListener listener) {
+		listeners.remove(listener);
+	}
+
+	@Override
+	public void subscribe(String topic, int qos) {
+		subscriptions.add(topic);
+	}
+
+	@Override
+	public void unsubscribe(String topic) {
+		subscriptions.remove(topic);
+	}
+
+	@Override
+	public int publish(String topic, byte[] payload, int qos, boolean retain, int priority) {
+		int result = messageId.incrementAndGet();
+		if (isSubscribed(topic))
+			listeners.forEach(it -> it.onMessageArrived(topic, payload, qos, false));
+		return result;
+	}
+
+	private boolean isSubscribed(String topic) {
+		for (String subscription : subscriptions)
+			if (matches(subscription, topic))
+				return true;
+		return false;
+	}
+
+	/**
+	 * Returns true if 'topic' matches the topic filter 'filter'
+	 *
+	 * @param filter
+	 *            Topic filter ('+' matches a level, a final '#' the remaining
+	 *            levels)
+	 * @param topic
+	 *            Topic
+	 * @return Whether it matches
+	 */
+	public static boolean matches(String filter, String topic) {
+		String[] filterLevels = filter.split(LEVEL_SEPARATOR, -1);
+		String[] topicLevels = topic.split(LEVEL_SEPARATOR, -1);
+		for (int i = 0; i < filterLevels.length; i++) {
+			if (filterLevels[i].equals(MULTI_LEVEL))
+				return true;
+			if (i >= topicLevels.length)
+				return false;
+			if (!filterLevels[i].equals(SINGLE_LEVEL) && !filterLevels[i].equals(topicLevels[i]))
+				return false;
+		}
+		return filterLevels.length == topicLevels.length;
+	}
+}
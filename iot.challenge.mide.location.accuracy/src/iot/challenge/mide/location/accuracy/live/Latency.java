@@ -0,0 +1,85 @@
+package iot.challenge.mide.location.accuracy.live;
+
+/**
+ * Distribution of latencies. Latencies are counted in buckets of one
+ * millisecond up to {@value #BUCKETS} ms (longer ones in the last bucket), so
+ * recording never allocates memory and percentiles have millisecond
+ * resolution. Threads can record and read concurrently
+ */
+public class Latency {
+
+	private static final int BUCKETS = 1 << 15;
+	private static final long NANOS_PER_MILLI = 1000000L;
+
+	private final long[] counts;
+	private long count;
+	private long total;
+	private long max;
+
+	public Latency() {
+		super();
+		counts = new long[BUCKETS];
+	}
+
+	/**
+	 * Records a latency
+	 *
+	 * @param nanos
+	 *            Latency (ns)
+	 */
+	public synchronized void record(long nanos) {
+		long value = Math.max(nanos, 0);
+		counts[(int) Math.min(value / NANOS_PER_MILLI, BUCKETS - 1)]++;
+		count++;
+		total += value;
+		max = Math.max(max, value);
+	}
+
+	public synchronized long getCount() {
+		return count;
+	}
+
+	/**
+	 * Returns the mean latency (ms), NaN if none was recorded
+	 */
+	public synchronized double getMean() {
+		return (count == 0) ? Double.NaN : total / (double) count / NANOS_PER_MILLI;
+	}
+
+	/**
+	 * Returns the maximum latency (ms)
+	 */
+	public synchronized double getMax() {
+		return max / (double) NANOS_PER_MILLI;
+	}
+
+	/**
+	 * Returns the latency (ms, upper bound of its bucket) below which
+	 * 'percentile' percent of the latencies are, NaN if none was recorded
+	 *
+	 * @param percentile
+	 *            Percentile (0 to 100)
+	 * @return Latency
+	 */
+	public synchronized double getPercentile(double percentile) {
+		if (percentile < 0 || percentile > 100)
+			throw new IllegalArgumentException("Invalid percentile: " + percentile);
+		if (count == 0)
+			return Double.NaN;
+
+		long rank = Math.max((long) Math.ceil(count * percentile / 100d), 1);
+		long seen = 0;
+		for (int bucket = 0; bucket < BUCKETS; bucket++) {
+			seen += counts[bucket];
+			if (seen >= rank)
+				return Math.min(bucket + 1d, getMax());
+		}
+		return getMax();
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("count: %d, mean: %.2f ms, p50: %.0f ms, p99: %.0f ms, max: %.2f ms", count,
+				getMean(), getPercentile(50), getPercentile(99), getMax());
+	}
+}
@@ -0,0 +1,288 @@
+package iot.challenge.mide.location.accuracy.live;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import iot.challenge.mide.location.accuracy.simulation.BeaconEvent;
+import iot.challenge.mide.location.accuracy.simulation.services.InstallationService;
+import iot.challenge.mide.location.accuracy.simulation.services.LocationBatch;
+import iot.challenge.mide.location.accuracy.simulation.services.LocationService;
+
+/**
+ * Live localization. Scanners publish their detections of a beacon, encoded
+ * with {@link BeaconEvent#toByteArray(List)}, to
+ * '{scanner topic}/{scanner address}/{beacon}'. The engine saves them in the
+ * {@link InstallationService} as they arrive and, every publication rate,
+ * publishes the location of each beacon computed by the {@link LocationService}
+ * to '{location topic}/{installation}/{beacon}'.
+ *
+ * The latency of a message is the time from its arrival to the first
+ * publication whose scanning window covers its events. It's bounded by the
+ * delay, the publication rate and the time to compute a location; the
+ * publications that take longer than the publication rate are counted as
+ * overruns. A message that no publication covers within the pending timeout
+ * (e.g. from a scanner whose clock runs ahead) is forgotten and counted as
+ * expired, as are the oldest ones when {@value #MAX_PENDING} are pending.
+ *
+ * Messages are saved concurrently, and while the locations are computed: the
+ * installation service only locks the series involved.
+ */
+public class LiveLocationEngine implements MessageListener {
+
+	public static final String SCANNER_TOPIC = "live.scanner.topic";
+	public static final String LOCATION_TOPIC = "live.location.topic";
+	public static final String PENDING_TIMEOUT = "live.pending.timeout";
+
+	public static final String DEFAULT_SCANNER_TOPIC = "mide/scanner";
+	public static final String DEFAULT_LOCATION_TOPIC = "mide/location";
+	public static final int DEFAULT_PENDING_TIMEOUT = 60000;
+
+	static final int MAX_PENDING = 1 << 16;
+
+	private static final String LEVEL_SEPARATOR = "/";
+	private static final int QOS = 0;
+	private static final int PRIORITY = 5;
+
+	private MessageService messageService;
+	private InstallationService installationService;
+	private LocationService locationService;
+	private LongSupplier clock;
+
+	private String scannerTopic;
+	private String locationTopic;
+	private long pendingTimeout;
+
+	private ScheduledExecutorService scheduler;
+	private final LocationBatch locations;
+
+	// Messages not covered by a publication yet: {last event time, arrival (ns)}
+	private final ArrayDeque<long[]> pending;
+	private final Latency latency;
+	private long messages;
+	private long malformed;
+	private long publications;
+	private long fixes;
+	private long overruns;
+	private long expired;
+
+	private LiveLocationEngine() {
+		super();
+		pending = new ArrayDeque<>();
+		latency = new Latency();
+		locations = new LocationBatch();
+	}
+
+	/**
+	 * @param messageService
+	 *            MQTT client
+	 * @param installationService
+	 *            Installations and events
+	 * @param locationService
+	 *            Location service of 'installationService'
+	 * @param properties
+	 *            Topics and pending timeout (ms) (the defaults for the absent
+	 *            keys)
+	 */
+	public LiveLocationEngine(MessageService messageService, InstallationService installationService,
+			LocationService locationService, Properties properties) {
+		this(messageService, installationService, locationService, properties, System::currentTimeMillis);
+	}
+
+	/**
+	 * @param clock
+	 *            Current time (ms), in the time base of the events
+	 */
+	public LiveLocationEngine(MessageService messageService, InstallationService installationService,
+			LocationService locationService, Properties properties, LongSupplier clock) {
+		this();
+		this.messageService = messageService;
+		this.installationService = installationService;
+		this.locationService = locationService;
+		this.clock = clock;
+		this.scannerTopic = properties.getProperty(SCANNER_TOPIC, DEFAULT_SCANNER_TOPIC);
+		this.locationTopic = properties.getProperty(LOCATION_TOPIC, DEFAULT_LOCATION_TOPIC);
+		this.pendingTimeout = TimeUnit.MILLISECONDS.toNanos(
+				Integer.parseInt(properties.getProperty(PENDING_TIMEOUT, Integer.toString(DEFAULT_PENDING_TIMEOUT))));
+	}
+
+	/**
+	 * Subscribes to the scanners and schedules the publications
+	 */
+	public synchronized void start() {
+		if (scheduler != null)
+			return;
+		messageService.addListener(this);
+		messageService.subscribe(scannerTopic + LEVEL_SEPARATOR + "+" + LEVEL_SEPARATOR + "+", QOS);
+
+		int rate = locationService.getPublicationRate();
+		scheduler = Executors.newSingleThreadScheduledExecutor();
+		scheduler.scheduleAtFixedRate(() -> {
+			try {
+				publish();
+			} catch (RuntimeException e) {
+				// An exception would cancel the next publications
+				e.printStackTrace();
+			}
+		}, rate, rate, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stops the publications and unsubscribes from the scanners
+	 */
+	public synchronized void stop() {
+		if (scheduler == null)
+			return;
+		scheduler.shutdown();
+		try {
+			scheduler.awaitTermination(locationService.getPublicationRate(), TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		scheduler = null;
+		messageService.unsubscribe(scannerTopic + LEVEL_SEPARATOR + "+" + LEVEL_SEPARATOR + "+");
+		messageService.removeListener(this);
+	}
+
+	@Override
+	public void onMessageArrived(String topic, byte[] payload, int qos, boolean retained) {
+		long arrival = System.nanoTime();
+		if (!topic.startsWith(scannerTopic + LEVEL_SEPARATOR))
+			return;
+		// Scanner address and beacon
+		String[] levels = topic.substring(scannerTopic.length() + 1).split(LEVEL_SEPARATOR);
+		if (levels.length != 2)
+			return;
+
+		List<BeaconEvent> events;
+		try {
+			events = BeaconEvent.readBeacons(payload);
+			// Nothing is saved if an event is out of range
+			installationService.saveEvents(levels[0], levels[1], events);
+		} catch (RuntimeException e) {
+			synchronized (pending) {
+				malformed++;
+			}
+			return;
+		}
+
+		long last = Long.MIN_VALUE;
+		for (BeaconEvent event : events)
+			last = Math.max(last, event.getTime());
+		synchronized (pending) {
+			messages++;
+			if (!events.isEmpty()) {
+				if (pending.size() == MAX_PENDING) {
+					pending.removeFirst();
+					expired++;
+				}
+				pending.add(new long[] { last, arrival });
+			}
+		}
+	}
+
+	/**
+	 * Computes and publishes the locations of the current time
+	 */
+	public void publish() {
+		synchronized (locations) {
+			publish(locations);
+		}
+	}
+
+	private void publish(LocationBatch locations) {
+		long start = System.nanoTime();
+		long current = clock.getAsLong();
+
+		locationService.localization(current, locations);
+		for (int i = 0; i < locations.size(); i++) {
+			String topic = locationTopic + LEVEL_SEPARATOR + locations.getInstallation(i) + LEVEL_SEPARATOR
+					+ locations.getBeacon(i);
+			messageService.publish(topic, locations.getPoint(i).toString().getBytes(), QOS, false, PRIORITY);
+		}
+
+		long published = System.nanoTime();
+		long end = locationService.getWindowEnd(current);
+		synchronized (pending) {
+			Iterator<long[]> iterator = pending.iterator();
+			while (iterator.hasNext()) {
+				long[] message = iterator.next();
+				if (message[0] <= end) {
+					latency.record(published - message[1]);
+					iterator.remove();
+				} else if (published - message[1] > pendingTimeout) {
+					iterator.remove();
+					expired++;
+				}
+			}
+			publications++;
+			fixes += locations.size();
+			if (published - start > TimeUnit.MILLISECONDS.toNanos(locationService.getPublicationRate()))
+				overruns++;
+		}
+	}
+
+	/**
+	 * Returns the latencies from the arrival of the messages to the publications
+	 * that cover them
+	 */
+	public Latency getLatency() {
+		return latency;
+	}
+
+	public long getMessages() {
+		synchronized (pending) {
+			return messages;
+		}
+	}
+
+	/**
+	 * Returns the number of messages skipped because they couldn't be decoded or
+	 * had events out of range
+	 */
+	public long getMalformed() {
+		synchronized (pending) {
+			return malformed;
+		}
+	}
+
+	public long getPublications() {
+		synchronized (pending) {
+			return publications;
+		}
+	}
+
+	/**
+	 * Returns the number of locations published
+	 */
+	public long getFixes() {
+		synchronized (pending) {
+			return fixes;
+		}
+	}
+
+	/**
+	 * Returns the number of messages no publication covered within the pending
+	 * timeout, or dropped because too many were pending
+	 */
+	public long getExpired() {
+		synchronized (pending) {
+			return expired;
+		}
+	}
+
+	/**
+	 * Returns the number of publications that took longer than the publication
+	 * rate
+	 */
+	public long getOverruns() {
+		synchronized (pending) {
+			return overruns;
+		}
+	}
+}
@@ -0,0 +1,23 @@
+package iot.challenge.mide.location.accuracy.live;
+
+/**
+ * Receiver of the messages of a {@link MessageService} (as Kura's
+ * DataServiceListener)
+ */
+@FunctionalInterface
+public interface MessageListener {
+
+	/**
+	 * Called when a message of a subscribed topic arrives
+	 *
+	 * @param topic
+	 *            Topic
+	 * @param payload
+	 *            Payload
+	 * @param qos
+	 *            Quality of service
+	 * @param retained
+	 *            Whether it's a retained message
+	 */
+	void onMessageArrived(String topic, byte[] payload, int qos, boolean retained);
+}
@@ -0,0 +1,42 @@
+package iot.challenge.mide.location.accuracy.live;
+
+/**
+ * MQTT client used by the live engine. It's the subset of Kura's DataService
+ * the engine needs, so a Kura bundle can adapt its DataService and the engine
+ * can run against {@link InProcessBroker} without Kura
+ */
+public interface MessageService {
+
+	void addListener(MessageListener listener);
+
+	void removeListener(MessageListener listener);
+
+	/**
+	 * Subscribes to 'topic' (MQTT wildcards allowed)
+	 *
+	 * @param topic
+	 *            Topic filter
+	 * @param qos
+	 *            Quality of service
+	 */
+	void subscribe(String topic, int qos);
+
+	void unsubscribe(String topic);
+
+	/**
+	 * Publishes a message
+	 *
+	 * @param topic
+	 *            Topic
+	 * @param payload
+	 *            Payload
+	 * @param qos
+	 *            Quality of service
+	 * @param retain
+	 *            Whether the message is retained
+	 * @param priority
+	 *            Priority
+	 * @return Message id
+	 */
+	int publish(String topic, byte[] payload, int qos, boolean retain, int priority);
+}
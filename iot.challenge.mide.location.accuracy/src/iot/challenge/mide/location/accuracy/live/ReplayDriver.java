@@ -0,0 +1,309 @@
+package iot.challenge.mide.location.accuracy.live;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.locks.LockSupport;
+
+import iot.challenge.mide.location.accuracy.simulation.BeaconEvent;
+import iot.challenge.mide.location.accuracy.simulation.Recording;
+import iot.challenge.mide.location.accuracy.simulation.ScannerEvents;
+import iot.challenge.mide.location.accuracy.simulation.services.InstallationService;
+import iot.challenge.mide.location.accuracy.simulation.services.LocationService;
+
+/**
+ * Load test of the live localization. Replays recordings through a
+ * {@link LiveLocationEngine}, in real time or 'speed' times faster, as if
+ * their scanners were publishing now: every {@value #DEFAULT_BATCH} ms (the
+ * batch) each scanner publishes its detections of each beacon, and the engine
+ * publishes the locations every publication rate of replay time.
+ *
+ * The recordings are replayed at once, each as a different beacon, and each
+ * one 'copies' times (as beacons '{beacon}-{copy}') to emulate a big site. The
+ * copies publish with a different phase in the batch, as independent scanners
+ * would. Messages are encoded before the replay starts, so the time measured
+ * is the gateway's: decoding, saving and locating.
+ *
+ * It reports the sustained ingest rate (events saved per second), the latency
+ * of the fixes ({@link LiveLocationEngine#getLatency()}) and the windows
+ * dropped: the publications skipped because the previous one ended after
+ * their time. The ingestion falls behind when the lag grows (the time the
+ * messages are delivered late); both show the engine is saturated.
+ */
+public class ReplayDriver {
+
+	public static final String SPEED = "replay.speed";
+	public static final String COPIES = "replay.copies";
+	public static final String BATCH = "replay.batch";
+
+	public static final double DEFAULT_SPEED = 1;
+	public static final int DEFAULT_COPIES = 1;
+	public static final int DEFAULT_BATCH = 1000;
+
+	private static final String LEVEL_SEPARATOR = "/";
+	private static final String COPY_SEPARATOR = "-";
+	private static final int QOS = 0;
+
+	private LocationService locationService;
+	private LiveLocationEngine engine;
+	private String scannerTopic;
+	private double speed;
+	private int copies;
+	private int batch;
+
+	private final Map<String, Recording> recordings;
+
+	// Replay time (ms) of the publication in progress, the clock of the engine
+	private volatile long current;
+	private volatile boolean delivering;
+	private long start;
+	private long startNanos;
+
+	private long events;
+	private long messages;
+	private long maxLag;
+	private long elapsed;
+	private long windows;
+	private long dropped;
+
+	private ReplayDriver() {
+		super();
+		recordings = new LinkedHashMap<>();
+	}
+
+	/**
+	 * @param installationService
+	 *            Installations of the recordings' scanners
+	 * @param locationService
+	 *            Location service of 'installationService'
+	 * @param properties
+	 *            Speed, copies, batch and topics (the defaults for the absent
+	 *            keys)
+	 */
+	public ReplayDriver(InstallationService installationService, LocationService locationService,
+			Properties properties) {
+		this();
+		this.locationService = locationService;
+		this.engine = new LiveLocationEngine(new InProcessBroker(), installationService, locationService, properties,
+				() -> current);
+		this.scannerTopic = properties.getProperty(LiveLocationEngine.SCANNER_TOPIC,
+				LiveLocationEngine.DEFAULT_SCANNER_TOPIC);
+		this.speed = Double.parseDouble(properties.getProperty(SPEED, Double.toString(DEFAULT_SPEED)));
+		this.copies = Integer.parseInt(properties.getProperty(COPIES, Integer.toString(DEFAULT_COPIES)));
+		this.batch = Integer.parseInt(properties.getProperty(BATCH, Integer.toString(DEFAULT_BATCH)));
+		if (speed <= 0 || copies < 1 || batch < 1)
+			throw new IllegalArgumentException("Invalid replay: speed " + speed + ", copies " + copies
+					+ ", batch " + batch);
+	}
+
+	/**
+	 * Adds a recording to replay
+	 *
+	 * @param beacon
+	 *            Beacon of its events (without '/')
+	 * @param recording
+	 *            Recording
+	 */
+	public void addRecording(String beacon, Recording recording) {
+		if (beacon.contains(LEVEL_SEPARATOR))
+			throw new IllegalArgumentException("Invalid beacon: " + beacon);
+		recordings.put(beacon, recording);
+	}
+
+	/**
+	 * Replays the recordings, from now, and returns when every event is covered
+	 * by a publication. The messages are delivered in the calling thread, the
+	 * publications in another one
+	 */
+	public void replay() {
+		start = System.currentTimeMillis();
+		TreeMap<Long, List<Message>> batches = encode();
+		long end = batches.isEmpty() ? start : batches.lastKey();
+		current = start;
+		delivering = true;
+
+		startNanos = System.nanoTime();
+		Thread publisher = new Thread(() -> publish(end), "replay-publications");
+		publisher.start();
+		deliver(batches);
+		elapsed = System.nanoTime() - startNanos;
+		delivering = false;
+		try {
+			publisher.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	// Messages by the end of their batch (replay time)
+	private TreeMap<Long, List<Message>> encode() {
+		TreeMap<Long, List<Message>> result = new TreeMap<>();
+		recordings.forEach((beacon, recording) -> recording.getEvents().forEach((scanner, scannerEvents) -> {
+			ScannerEvents.EventCursor cursor = scannerEvents.cursor(start);
+			List<BeaconEvent> events = new ArrayList<>();
+			long batchEnd = Long.MIN_VALUE;
+			while (cursor.next()) {
+				if (cursor.getTime() >= batchEnd) {
+					add(result, batchEnd, beacon, scanner, events);
+					batchEnd = start + ((cursor.getTime() - start) / batch + 1) * batch;
+				}
+				events.add(cursor.getEvent());
+			}
+			add(result, batchEnd, beacon, scanner, events);
+		}));
+		return result;
+	}
+
+	private void add(TreeMap<Long, List<Message>> batches, long batchEnd, String beacon, String scanner,
+			List<BeaconEvent> events) {
+		if (events.isEmpty())
+			return;
+		batches.computeIfAbsent(batchEnd, it -> new ArrayList<>())
+				.add(new Message(beacon, scanner, BeaconEvent.toByteArray(events), events.size()));
+		events.clear();
+	}
+
+	// Each copy of a batch is delivered at its phase, before the next batch
+	private void deliver(TreeMap<Long, List<Message>> batches) {
+		for (Map.Entry<Long, List<Message>> entry : batches.entrySet()) {
+			for (int copy = 0; copy < copies; copy++) {
+				long due = realTime(entry.getKey() + (long) copy * batch / copies);
+				long lag = waitUntil(due);
+				for (Message message : entry.getValue()) {
+					String topic = scannerTopic + LEVEL_SEPARATOR + message.scanner + LEVEL_SEPARATOR
+							+ message.beacon + COPY_SEPARATOR + copy;
+					engine.onMessageArrived(topic, message.payload, QOS, false);
+					events += message.events;
+					messages++;
+				}
+				maxLag = Math.max(maxLag, lag);
+			}
+		}
+	}
+
+	// Publications until the window covers 'end' and every message was
+	// delivered, skipping the ones overdue
+	private void publish(long end) {
+		int rate = locationService.getPublicationRate();
+		long last = end + (current - locationService.getWindowEnd(current));
+		long time = start + rate;
+		while (time - rate < last || delivering) {
+			waitUntil(realTime(time));
+			long overdue = (replayTime(System.nanoTime()) - time) / rate;
+			time += overdue * rate;
+			dropped += overdue;
+			windows += overdue + 1;
+
+			current = time;
+			try {
+				engine.publish();
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+			}
+			time += rate;
+		}
+	}
+
+	// Nanos of the replay time 'time'
+	private long realTime(long time) {
+		return startNanos + (long) ((time - start) * 1e6 / speed);
+	}
+
+	private long replayTime(long nanos) {
+		return start + (long) ((nanos - startNanos) * speed / 1e6);
+	}
+
+	// Returns how late 'nanos' is (ns)
+	private static long waitUntil(long nanos) {
+		long remaining;
+		while ((remaining = nanos - System.nanoTime()) > 0)
+			LockSupport.parkNanos(remaining);
+		return -remaining;
+	}
+
+	public LiveLocationEngine getEngine() {
+		return engine;
+	}
+
+	public double getSpeed() {
+		return speed;
+	}
+
+	public int getCopies() {
+		return copies;
+	}
+
+	/**
+	 * Returns the number of events delivered
+	 */
+	public long getEvents() {
+		return events;
+	}
+
+	public long getMessages() {
+		return messages;
+	}
+
+	/**
+	 * Returns the time to deliver the messages (ms)
+	 */
+	public double getElapsed() {
+		return elapsed / 1e6;
+	}
+
+	/**
+	 * Returns the events saved per second
+	 */
+	public double getIngestRate() {
+		return (elapsed > 0) ? events * 1e9 / elapsed : 0;
+	}
+
+	/**
+	 * Returns the longest a message was delivered after its time (ms)
+	 */
+	public double getMaxLag() {
+		return maxLag / 1e6;
+	}
+
+	/**
+	 * Returns the number of publications due, published or dropped
+	 */
+	public long getWindows() {
+		return windows;
+	}
+
+	/**
+	 * Returns the number of publications skipped because they were overdue
+	 */
+	public long getDropped() {
+		return dropped;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"speed: %sx, copies: %d, events: %d, messages: %d, elapsed: %.0f ms, ingest: %.0f events/s, "
+						+ "max lag: %.1f ms, windows: %d, dropped: %d, fixes: %d, expired: %d, latency: %s",
+				speed, copies, events, messages, getElapsed(), getIngestRate(), getMaxLag(), windows, dropped,
+				engine.getFixes(), engine.getExpired(), engine.getLatency());
+	}
+
+	// Message of a scanner for all the copies of a beacon
+	private static class Message {
+
+		private final String beacon;
+		private final String scanner;
+		private final byte[] payload;
+		private final int events;
+
+		Message(String beacon, String scanner, byte[] payload, int events) {
+			this.beacon = beacon;
+			this.scanner = scanner;
+			this.payload = payload;
+			this.events = events;
+		}
+	}
+}
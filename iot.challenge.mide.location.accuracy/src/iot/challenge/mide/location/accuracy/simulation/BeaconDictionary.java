@@ -0,0 +1,101 @@
+package iot.challenge.mide.location.accuracy.simulation;
+
+import java.util.Arrays;
+
+/**
+ * Dictionary of beacon identities. Each identity (every field of a beacon but
+ * its rssi and txpower) is encoded as a dense int id.
+ */
+public class BeaconDictionary {
+
+	/**
+	 * Id of the beacons without identity fields
+	 */
+	public static final int ANONYMOUS = 0;
+
+	private static BeaconDictionary instance = new BeaconDictionary();
+
+	private String[] identities;
+	private int size;
+
+	// Open addressing: slot -> id + 1 (0 is an empty slot)
+	private int[] slots;
+
+	private BeaconDictionary() {
+		super();
+		identities = new String[16];
+		slots = new int[32];
+		size = 0;
+		intern("");
+	}
+
+	public static BeaconDictionary getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Returns the id of 'identity', adding it if it's unknown. Known identities
+	 * are found without allocating.
+	 *
+	 * @param identity
+	 *            Beacon identity
+	 * @return Id
+	 */
+	public synchronized int intern(CharSequence identity) {
+		int hash = hash(identity);
+		int mask = slots.length - 1;
+		int slot = hash & mask;
+		while (slots[slot] != 0) {
+			int id = slots[slot] - 1;
+			if (identities[id].contentEquals(identity))
+				return id;
+			slot = (slot + 1) & mask;
+		}
+
+		int id = size++;
+		if (id == identities.length)
+			identities = Arrays.copyOf(identities, id * 2);
+		identities[id] = identity.toString();
+		slots[slot] = id + 1;
+		if (size * 2 > slots.length)
+			rehash();
+		return id;
+	}
+
+	/**
+	 * Returns the identity of the beacon 'id'
+	 *
+	 * @param id
+	 *            Id
+	 * @return Identity
+	 */
+	public synchronized String getIdentity(int id) {
+		if (id < 0 || id >= size)
+			throw new IllegalArgumentException("Unknown beacon: " + id);
+		return identities[id];
+	}
+
+	public synchronized int size() {
+		return size;
+	}
+
+	private void rehash() {
+		slots = new int[slots.length * 2];
+		int mask = slots.length - 1;
+		for (int id = 0; id < size; id++) {
+			int slot = identities[id].hashCode() & mask;
+			while (slots[slot] != 0)
+				slot = (slot + 1) & mask;
+			slots[slot] = id + 1;
+		}
+	}
+
+	// Same as String.hashCode, so stored identities can be rehashed
+	private static int hash(CharSequence value) {
+		int hash = 0;
+		int length = value.length();
+		for (int i = 0; i < length; i++)
+			hash = 31 * hash + value.charAt(i);
+		return hash;
+	}
+}
@@ -10,25 +10,24 @@ import java.util.List;
 import java.util.stream.Collectors;
 
 /**
- * Represents a BeaconEvent (Dated BluetoothLeBeacon)
+ * Represents a BeaconEvent (Dated BluetoothLeBeacon). Events are decoded from
+ * the scanner messages and the recordings; once saved they are kept in the
+ * primitive columns of the series, not as objects. The time of an event is
+ * immutable
  */
 public class BeaconEvent implements Comparable<BeaconEvent> {
 
 	public static final String TIME = "time";
 	public static final String BEACON = "beacon";
 
-	private Long time;
+	private long time;
 
 	private BluetoothLeBeacon beacon;
 
-	public Long getTime() {
+	public long getTime() {
 		return time;
 	}
 
-	public void setTime(Long time) {
-		this.time = time;
-	}
-
 	public BluetoothLeBeacon getBeacon() {
 		return beacon;
 	}
@@ -66,10 +65,7 @@ public class BeaconEvent implements Comparable<BeaconEvent> {
 
 	public static BeaconEvent fromJson(JsonValue value) {
 		JsonObject json = value.asObject();
-		BeaconEvent result = new BeaconEvent();
-		result.time = json.get(TIME).asLong();
-		result.beacon = BluetoothLeBeacon.fromString(json.get(BEACON).asString());
-		return result;
+		return new BeaconEvent(BluetoothLeBeacon.fromString(json.get(BEACON).asString()), json.get(TIME).asLong());
 	}
 
 	/**
@@ -109,16 +105,13 @@ public class BeaconEvent implements Comparable<BeaconEvent> {
 	}
 
 	public BeaconEvent copy() {
-		BeaconEvent event = new BeaconEvent();
-		event.time = new Long(time);
-		event.beacon = beacon.copy();
-		return event;
+		return new BeaconEvent(beacon.copy(), time);
 	}
 
 	@Override
 	public int compareTo(BeaconEvent other) {
 		if (other == null)
 			return 1;
-		return time.compareTo(other.time);
+		return Long.compare(time, other.time);
 	}
 }
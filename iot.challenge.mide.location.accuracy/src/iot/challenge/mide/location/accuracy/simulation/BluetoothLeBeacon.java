@@ -1,13 +1,49 @@
 package iot.challenge.mide.location.accuracy.simulation;
 
+/**
+ * Represents a BluetoothLeBeacon detection. Its text form is a list of 'key:
+ * value' tokens separated by '; ' (uuid, major, minor, protocol, address,
+ * txpower and rssi). Every token but txpower and rssi is part of the beacon
+ * identity, which is kept as an id of the {@link BeaconDictionary}.
+ */
 public class BluetoothLeBeacon {
 
 	public static final String RSSI = "rssi";
 	public static final String TXPOWER = "txpower";
 
+	private static final String SEPARATOR = "; ";
+	private static final String KEY_SEPARATOR = ": ";
+
+	private static final ThreadLocal<Parser> PARSER = ThreadLocal.withInitial(Parser::new);
+
+	private int id;
 	private int rssi;
 	private int txpower;
 
+	public BluetoothLeBeacon() {
+		super();
+		id = BeaconDictionary.ANONYMOUS;
+	}
+
+	public BluetoothLeBeacon(int rssi, int txpower) {
+		this();
+		this.rssi = rssi;
+		this.txpower = txpower;
+	}
+
+	public BluetoothLeBeacon(int id, int rssi, int txpower) {
+		this(rssi, txpower);
+		this.id = id;
+	}
+
+	public int getId() {
+		return id;
+	}
+
+	public String getIdentity() {
+		return BeaconDictionary.getInstance().getIdentity(id);
+	}
+
 	public int getRssi() {
 		return rssi;
 	}
@@ -24,22 +60,146 @@ public class BluetoothLeBeacon {
 		this.txpower = txpower;
 	}
 
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder(getIdentity());
+		if (builder.length() > 0)
+			builder.append(SEPARATOR);
+		return builder.append(TXPOWER).append(KEY_SEPARATOR).append(txpower)
+				.append(SEPARATOR)
+				.append(RSSI).append(KEY_SEPARATOR).append(rssi)
+				.toString();
+	}
+
 	public static BluetoothLeBeacon fromString(String event) {
-		BluetoothLeBeacon result = new BluetoothLeBeacon();
-		for (String token : event.split("; ")) {
-			if (token.startsWith("txpower")) {
-				result.txpower = Integer.parseInt(token.split(": ")[1]);
-			} else if (token.startsWith("rssi")) {
-				result.rssi = Integer.parseInt(token.split(": ")[1]);
-			}
-		}
-		return result;
+		Parser parser = PARSER.get();
+		parser.parse(event);
+		return new BluetoothLeBeacon(parser.id, parser.rssi, parser.txpower);
 	}
 
 	public BluetoothLeBeacon copy() {
 		BluetoothLeBeacon result = new BluetoothLeBeacon();
+		result.id = id;
 		result.rssi = rssi;
 		result.txpower = txpower;
 		return result;
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Single-pass parser of the text form. Instances are reusable but not
+	 * thread-safe; a parse allocates nothing unless it finds a new identity.
+	 */
+	public static class Parser {
+
+		private final BeaconDictionary dictionary;
+		private final StringBuilder identity;
+
+		// Consecutive detections usually belong to the same beacon
+		private String lastIdentity;
+		private int lastId;
+
+		private int id;
+		private int rssi;
+		private int txpower;
+
+		public Parser() {
+			dictionary = BeaconDictionary.getInstance();
+			identity = new StringBuilder();
+			lastIdentity = null;
+		}
+
+		/**
+		 * Parses 'text'. The result is available through the getters until the next
+		 * parse.
+		 *
+		 * @param text
+		 *            Text form of a beacon
+		 * @throws NumberFormatException
+		 *             If rssi or txpower are not integers
+		 */
+		public void parse(CharSequence text) {
+			identity.setLength(0);
+			rssi = 0;
+			txpower = 0;
+
+			int length = text.length();
+			int start = 0;
+			while (start < length) {
+				int end = indexOf(text, ';', start, length);
+				int colon = indexOf(text, ':', start, end);
+
+				if (colon < end && regionEquals(text, start, colon, RSSI)) {
+					rssi = parseInt(text, colon + 1, end);
+				} else if (colon < end && regionEquals(text, start, colon, TXPOWER)) {
+					txpower = parseInt(text, colon + 1, end);
+				} else {
+					if (identity.length() > 0)
+						identity.append(SEPARATOR);
+					identity.append(text, start, end);
+				}
+
+				start = end + 1;
+				if (start < length && text.charAt(start) == ' ')
+					start++;
+			}
+
+			id = identify();
+		}
+
+		public int getId() {
+			return id;
+		}
+
+		public int getRssi() {
+			return rssi;
+		}
+
+		public int getTxpower() {
+			return txpower;
+		}
+
+		private int identify() {
+			if (lastIdentity == null || !lastIdentity.contentEquals(identity)) {
+				lastId = dictionary.intern(identity);
+				lastIdentity = dictionary.getIdentity(lastId);
+			}
+			return lastId;
+		}
+
+		private static int indexOf(CharSequence text, char c, int start, int end) {
+			for (int i = start; i < end; i++) {
+				if (text.charAt(i) == c)
+					return i;
+			}
+			return end;
+		}
+
+		private static boolean regionEquals(CharSequence text, int start, int end, String value) {
+			if (end - start != value.length())
+				return false;
+			for (int i = 0; i < value.length(); i++) {
+				if (text.charAt(start + i) != value.charAt(i))
+					return false;
+			}
+			return true;
+		}
+
+		private static int parseInt(CharSequence text, int start, int end) {
+			while (start < end && text.charAt(start) == ' ')
+				start++;
+			boolean negative = start < end && text.charAt(start) == '-';
+			int i = negative ? start + 1 : start;
+			if (i == end)
+				throw new NumberFormatException("Expected integer: " + text.subSequence(start, end));
+
+			int value = 0;
+			for (; i < end; i++) {
+				int digit = text.charAt(i) - '0';
+				if (digit < 0 || digit > 9)
+					throw new NumberFormatException("Expected integer: " + text.subSequence(start, end));
+				value = value * 10 + digit;
+			}
+			return negative ? -value : value;
+		}
+	}
+}
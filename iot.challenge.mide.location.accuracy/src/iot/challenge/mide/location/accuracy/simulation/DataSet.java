@@ -2,21 +2,36 @@ package iot.challenge.mide.location.accuracy.simulation;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.regex.Pattern;
-
-import com.eclipsesource.json.Json;
-import com.eclipsesource.json.JsonValue;
+import java.util.stream.Collectors;
 
 import iot.challenge.mide.location.accuracy.installation.Installation;
 import iot.challenge.mide.location.accuracy.installation.Point;
 
+/**
+ * Represents a data set. It is composed of:
+ * <ul>
+ * <li>An installation (installation.txt)</li>
+ * <li>A recording for each point (x&lt;X&gt;y&lt;Y&gt;.txt)</li>
+ * </ul>
+ *
+ * Text recordings are converted once to their binary form
+ * (x&lt;X&gt;y&lt;Y&gt;.rec, {@link RecordingFile}), which is memory-mapped on
+ * later loads.
+ */
 public class DataSet {
 
-	private static final String INSTALLATION = "installation.txt";
+	static final String INSTALLATION = "installation.txt";
 	private static final Pattern RECORDING = Pattern.compile("x\\d+y\\d+\\.txt");
+	private static final Pattern BINARY_RECORDING = Pattern.compile("x\\d+y\\d+\\.rec");
+	static final String TEXT_EXTENSION = ".txt";
+	static final String BINARY_EXTENSION = ".rec";
 
 	private Installation installation;
 	private Map<Point, Recording> recordings;
@@ -28,18 +43,21 @@ public class DataSet {
 
 	public DataSet(File folder) throws Exception {
 		this();
+		Map<Point, File> recordingFiles = new HashMap<>();
 		for (File file : folder.listFiles()) {
 			if (isRecordingFile(file)) {
-				String name = file.getName();
-				int x = Integer.parseInt(name.substring(1, name.indexOf('y')));
-				int y = Integer.parseInt(name.substring(name.indexOf('y') + 1, name.indexOf('.')));
-				recordings.put(new Point(x, y), readRecording(readFile(file)));
+				recordingFiles.put(recordingPoint(file), file);
+			} else if (isBinaryRecordingFile(file)) {
+				recordingFiles.putIfAbsent(recordingPoint(file), file);
 			} else if (isInstallationFile(file)) {
 				installation = Installation.fromString(readFile(file));
+			} else if (isTemporaryFile(file)) {
+				// A binary form being written, or left by an interrupted conversion
 			} else {
 				throw new IllegalArgumentException("Unknown file");
 			}
 		}
+		recordings.putAll(readRecordings(new ArrayList<>(recordingFiles.values())));
 	}
 
 	public Installation getInstallation() {
@@ -58,15 +76,68 @@ public class DataSet {
 		return RECORDING.matcher(f.getName()).matches();
 	}
 
+	private static boolean isBinaryRecordingFile(File f) {
+		return BINARY_RECORDING.matcher(f.getName()).matches();
+	}
+
+	private static boolean isTemporaryFile(File f) {
+		return f.getName().endsWith(RecordingFile.TEMPORARY_EXTENSION);
+	}
+
+	private static File binaryRecordingFile(File f) {
+		String name = f.getName();
+		return new File(f.getParentFile(), name.substring(0, name.indexOf('.')) + BINARY_EXTENSION);
+	}
+
+	private static Point recordingPoint(File f) {
+		String name = f.getName();
+		int x = Integer.parseInt(name.substring(1, name.indexOf('y')));
+		int y = Integer.parseInt(name.substring(name.indexOf('y') + 1, name.indexOf('.')));
+		return new Point(x, y);
+	}
+
 	private static String readFile(File f) throws IOException {
 		return new String(Files.readAllBytes(f.toPath()));
 	}
 
-	private static Recording readRecording(String recording) {
-		JsonValue json = Json.parse(recording);
-		recording = json.asObject().get("recording").toString().replaceAll("\\\\\"", "\"");
-		recording = recording.substring(1, recording.length() - 1);
-		Recording.fromString(recording);
-		return Recording.fromString(recording);
+	// Recordings are independent, so they are read in parallel
+	private static Map<Point, Recording> readRecordings(List<File> files) throws IOException {
+		try {
+			return files.parallelStream()
+					.collect(Collectors.toMap(DataSet::recordingPoint, DataSet::readRecording));
+		} catch (UncheckedIOException e) {
+			throw new IOException(e.getMessage(), e.getCause());
+		}
+	}
+
+	private static Recording readRecording(File file) {
+		try {
+			if (isBinaryRecordingFile(file))
+				return RecordingFile.map(file);
+
+			File binary = binaryRecordingFile(file);
+			if (binary.lastModified() >= file.lastModified()) {
+				try {
+					return RecordingFile.map(binary);
+				} catch (IOException e) {
+					// Outdated or corrupt binary form, it's rebuilt below
+				}
+			}
+
+			Recording recording = RecordingReader.read(file);
+			convert(recording, binary);
+			return recording;
+		} catch (IOException e) {
+			throw new UncheckedIOException(file.getName() + ": " + e.getMessage(), e);
+		}
+	}
+
+	// A data set in a read-only folder is still usable, just not cached
+	private static void convert(Recording recording, File binary) {
+		try {
+			RecordingFile.write(recording, binary);
+		} catch (IOException e) {
+			System.err.println("Unable to write " + binary + ": " + e.getMessage());
+		}
 	}
 }
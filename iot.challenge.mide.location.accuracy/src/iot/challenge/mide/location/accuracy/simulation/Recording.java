@@ -5,11 +5,9 @@ import com.eclipsesource.json.JsonArray;
 import com.eclipsesource.json.JsonObject;
 import com.eclipsesource.json.JsonValue;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.PriorityQueue;
-import java.util.Queue;
-import java.util.stream.Collectors;
 
 /**
  * Represents a recording of beacon events
@@ -25,19 +23,21 @@ public class Recording {
 	public static final String SCANNER = "scanner";
 	public static final String SCANNER_EVENTS = "scannerEvents";
 
+	private static final ScannerEvents NO_EVENTS = new ScannerEvents.Builder().build();
+
 	private final String topic;
 
 	private final Long startTime;
 
 	private final Long duration;
 
-	private Map<String, Queue<BeaconEvent>> events;
+	private final Map<String, ScannerEvents> events;
 
-	public Recording(String topic, long startTime, long duration) {
+	public Recording(String topic, long startTime, long duration, Map<String, ScannerEvents> events) {
 		this.topic = topic;
 		this.startTime = startTime;
 		this.duration = duration;
-		this.events = new HashMap<>();
+		this.events = Collections.unmodifiableMap(events);
 	}
 
 	public String getTopic() {
@@ -52,7 +52,7 @@ public class Recording {
 		return duration;
 	}
 
-	public Map<String, Queue<BeaconEvent>> getEvents() {
+	public Map<String, ScannerEvents> getEvents() {
 		return events;
 	}
 
@@ -61,16 +61,10 @@ public class Recording {
 	 *
 	 * @param scanner
 	 *            Scanner
-	 * @return A priority queue of events.
-	 *         {@link BeaconEvent#compareTo(BeaconEvent)}
+	 * @return Events sorted by time
 	 */
-	public Queue<BeaconEvent> getScannerEvents(String scanner) {
-		Queue<BeaconEvent> scannerEvents = events.get(scanner);
-		if (scannerEvents == null) {
-			scannerEvents = new PriorityQueue<>();
-			events.put(scanner, scannerEvents);
-		}
-		return scannerEvents;
+	public ScannerEvents getScannerEvents(String scanner) {
+		return events.getOrDefault(scanner, NO_EVENTS);
 	}
 
 	@Override
@@ -86,7 +80,7 @@ public class Recording {
 				.add(EVENTS, toJson(events));
 	}
 
-	private static JsonArray toJson(Map<String, Queue<BeaconEvent>> events) {
+	private static JsonArray toJson(Map<String, ScannerEvents> events) {
 		JsonArray json = new JsonArray();
 		events.entrySet()
 				.stream()
@@ -95,41 +89,44 @@ public class Recording {
 		return json;
 	}
 
-	private static JsonObject toJson(Map.Entry<String, Queue<BeaconEvent>> entry) {
+	private static JsonObject toJson(Map.Entry<String, ScannerEvents> entry) {
 		return new JsonObject()
 				.add(SCANNER, entry.getKey())
 				.add(SCANNER_EVENTS, toJson(entry.getValue()));
 	}
 
-	private static JsonArray toJson(Queue<BeaconEvent> scannerEvents) {
+	private static JsonArray toJson(ScannerEvents scannerEvents) {
 		JsonArray json = new JsonArray();
-		scannerEvents.stream()
-				.map(BeaconEvent::toJson)
-				.forEach(json::add);
+		ScannerEvents.EventCursor cursor = scannerEvents.cursor();
+		while (cursor.next())
+			json.add(cursor.getEvent().toJson());
 		return json;
 	}
 
 	public static Recording fromString(String message) {
 		JsonObject json = Json.parse(message).asObject();
-		Recording recording = new Recording(
+		return new Recording(
 				json.get(TOPIC).asString(),
 				json.get(START_TIME).asLong(),
-				json.get(DURATION).asLong());
-		recording.events = readEvents(json.get(EVENTS).asArray());
-		return recording;
+				json.get(DURATION).asLong(),
+				readEvents(json.get(EVENTS).asArray()));
 	}
 
-	private static Map<String, Queue<BeaconEvent>> readEvents(JsonArray events) {
-		return events.values().stream()
+	private static Map<String, ScannerEvents> readEvents(JsonArray events) {
+		Map<String, ScannerEvents> result = new HashMap<>();
+		events.values().stream()
 				.map(JsonValue::asObject)
-				.collect(Collectors.toMap(
-						json -> json.get(SCANNER).asString(),
-						json -> readScannerEvents(json.get(SCANNER_EVENTS).asArray())));
+				.forEach(json -> result.put(
+						json.get(SCANNER).asString(),
+						readScannerEvents(json.get(SCANNER_EVENTS).asArray())));
+		return result;
 	}
 
-	private static Queue<BeaconEvent> readScannerEvents(JsonArray scannerEvents) {
-		return scannerEvents.values().stream()
+	private static ScannerEvents readScannerEvents(JsonArray scannerEvents) {
+		ScannerEvents.Builder builder = new ScannerEvents.Builder();
+		scannerEvents.values().stream()
 				.map(BeaconEvent::fromJson)
-				.collect(Collectors.toCollection(PriorityQueue::new));
+				.forEach(builder::add);
+		return builder.build();
 	}
 }
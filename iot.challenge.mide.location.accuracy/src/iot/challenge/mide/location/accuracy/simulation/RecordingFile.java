@@ -0,0 +1,205 @@
+package iot.challenge.mide.location.accuracy.simulation;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary columnar form of a {@link Recording}. The file is composed of:
+ * <ul>
+ * <li>A header: magic number, version, topic, start time and duration</li>
+ * <li>The beacon identities</li>
+ * <li>The scanner dictionary: address, offset and length of the block of each
+ * scanner, and its beacon table as indexes of the beacon identities</li>
+ * <li>The blocks of events of each scanner ({@link ScannerEvents})</li>
+ * </ul>
+ *
+ * The file is memory-mapped on read, so the events never reach the heap.
+ */
+public class RecordingFile {
+
+	private static final int MAGIC = 0x4D494445; // MIDE
+	private static final int VERSION = 2;
+
+	// Extension of the files being written, next to their destination
+	static final String TEMPORARY_EXTENSION = ".tmp";
+
+	private RecordingFile() {
+		super();
+	}
+
+	/**
+	 * Writes 'recording' to 'file'. The file is replaced atomically, so
+	 * concurrent readers never see a partial file.
+	 *
+	 * @param recording
+	 *            Recording
+	 * @param file
+	 *            Destination file
+	 * @throws IOException
+	 *             If the file cannot be written
+	 */
+	public static void write(Recording recording, File file) throws IOException {
+		List<String> scanners = new ArrayList<>(recording.getEvents().keySet());
+		List<ByteBuffer> blocks = new ArrayList<>();
+		scanners.forEach(scanner -> blocks.add(recording.getScannerEvents(scanner).encoded()));
+
+		// Dictionary id -> Identity index
+		Map<Integer, Integer> identities = new LinkedHashMap<>();
+		scanners.forEach(scanner -> {
+			for (int id : recording.getScannerEvents(scanner).beacons())
+				identities.putIfAbsent(id, identities.size());
+		});
+
+		File temporary = File.createTempFile(file.getName(), TEMPORARY_EXTENSION,
+				file.getAbsoluteFile().getParentFile());
+		try {
+			try (DataOutputStream output = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(temporary)))) {
+
+				output.writeInt(MAGIC);
+				output.writeInt(VERSION);
+				writeString(output, recording.getTopic());
+				output.writeLong(recording.getStartTime());
+				output.writeLong(recording.getDuration());
+
+				BeaconDictionary dictionary = BeaconDictionary.getInstance();
+				output.writeInt(identities.size());
+				for (int id : identities.keySet())
+					writeString(output, dictionary.getIdentity(id));
+
+				// Block offsets are relative to the end of the dictionary
+				output.writeInt(scanners.size());
+				long offset = 0;
+				for (int i = 0; i < scanners.size(); i++) {
+					writeString(output, scanners.get(i));
+					output.writeLong(offset);
+					output.writeInt(blocks.get(i).remaining());
+					offset += blocks.get(i).remaining();
+
+					int[] beacons = recording.getScannerEvents(scanners.get(i)).beacons();
+					output.writeInt(beacons.length);
+					for (int id : beacons)
+						output.writeInt(identities.get(id));
+				}
+
+				for (ByteBuffer block : blocks)
+					writeBlock(output, block);
+			}
+			Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temporary.toPath());
+		}
+	}
+
+	/**
+	 * Maps the recording stored in 'file'
+	 *
+	 * @param file
+	 *            Recording file
+	 * @return Recording backed by the mapped file
+	 * @throws IOException
+	 *             If the file cannot be read or it is malformed
+	 */
+	public static Recording map(File file) throws IOException {
+		MappedByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+
+		try {
+			if (buffer.getInt() != MAGIC)
+				throw new IOException(file.getName() + ": not a recording file");
+			int version = buffer.getInt();
+			if (version != VERSION)
+				throw new IOException(file.getName() + ": unsupported version " + version);
+
+			String topic = readString(buffer);
+			long startTime = buffer.getLong();
+			long duration = buffer.getLong();
+
+			BeaconDictionary dictionary = BeaconDictionary.getInstance();
+			int[] identities = new int[buffer.getInt()];
+			for (int i = 0; i < identities.length; i++)
+				identities[i] = dictionary.intern(readString(buffer));
+
+			int count = buffer.getInt();
+			String[] scanners = new String[count];
+			long[] offsets = new long[count];
+			int[] lengths = new int[count];
+			int[][] beacons = new int[count][];
+			for (int i = 0; i < count; i++) {
+				scanners[i] = readString(buffer);
+				offsets[i] = buffer.getLong();
+				lengths[i] = buffer.getInt();
+				beacons[i] = new int[buffer.getInt()];
+				for (int j = 0; j < beacons[i].length; j++)
+					beacons[i][j] = identities[buffer.getInt()];
+			}
+
+			int blocks = buffer.position();
+			Map<String, ScannerEvents> events = new HashMap<>();
+			for (int i = 0; i < count; i++)
+				events.put(scanners[i],
+						new ScannerEvents(slice(buffer, blocks + (int) offsets[i], lengths[i]), beacons[i]));
+
+			return new Recording(topic, startTime, duration, events);
+
+		} catch (RuntimeException e) {
+			throw new IOException(file.getName() + ": malformed recording file", e);
+		}
+	}
+
+	private static void writeBlock(DataOutputStream output, ByteBuffer block) throws IOException {
+		if (block.hasArray()) {
+			output.write(block.array(), block.arrayOffset() + block.position(), block.remaining());
+		} else {
+			byte[] bytes = new byte[block.remaining()];
+			block.get(bytes);
+			output.write(bytes);
+		}
+	}
+
+	// Null strings are stored with a negative length
+	private static void writeString(DataOutputStream output, String value) throws IOException {
+		if (value == null) {
+			output.writeInt(-1);
+		} else {
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			output.writeInt(bytes.length);
+			output.write(bytes);
+		}
+	}
+
+	private static String readString(ByteBuffer buffer) {
+		int length = buffer.getInt();
+		if (length < 0)
+			return null;
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+		ByteBuffer slice = buffer.duplicate();
+		((Buffer) slice).limit(offset + length);
+		((Buffer) slice).position(offset);
+		return slice.slice();
+	}
+}
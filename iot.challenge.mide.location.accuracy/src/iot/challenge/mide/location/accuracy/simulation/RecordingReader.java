@@ -0,0 +1,406 @@
+package iot.challenge.mide.location.accuracy.simulation;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Streaming reader of recording files.
+ *
+ * A recording file is a JSON object whose 'recording' member is the JSON of a
+ * {@link Recording} encoded as a string. The reader decodes both levels in a
+ * single pass over the file, appending the events to the columns of their
+ * scanner ({@link ScannerEvents}) as the characters arrive, without
+ * intermediate JSON trees or copies of the text. Beacons are parsed in place
+ * by a reused {@link BluetoothLeBeacon.Parser}.
+ */
+public class RecordingReader implements Closeable {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final int END = -1;
+
+	private final Reader reader;
+	private final char[] buffer;
+	private int position;
+	private int limit;
+	private long offset;
+
+	// True while reading the content of the string encoded recording
+	private boolean nested;
+	private int peeked;
+
+	private final StringBuilder text;
+	private final BluetoothLeBeacon.Parser beaconParser;
+
+	public RecordingReader(Reader reader) {
+		this.reader = reader;
+		this.buffer = new char[BUFFER_SIZE];
+		this.peeked = END - 1;
+		this.text = new StringBuilder();
+		this.beaconParser = new BluetoothLeBeacon.Parser();
+	}
+
+	public RecordingReader(File file) throws IOException {
+		this(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Reads a recording file
+	 *
+	 * @param file
+	 *            Recording file
+	 * @return Recording
+	 * @throws IOException
+	 *             If the file cannot be read or it is malformed
+	 */
+	public static Recording read(File file) throws IOException {
+		try (RecordingReader reader = new RecordingReader(file)) {
+			return reader.read();
+		}
+	}
+
+	/**
+	 * Reads the recording
+	 *
+	 * @return Recording
+	 * @throws IOException
+	 *             If the recording cannot be read or it is malformed
+	 */
+	public Recording read() throws IOException {
+		Recording recording = null;
+		expect('{');
+		if (!consume('}')) {
+			do {
+				String key = readString();
+				expect(':');
+				if (Recording.RECORDING.equals(key))
+					recording = readRecording();
+				else
+					skipValue();
+			} while (consume(','));
+			expect('}');
+		}
+		if (recording == null)
+			throw error("Missing " + Recording.RECORDING);
+		return recording;
+	}
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+
+	private Recording readRecording() throws IOException {
+		if (peek() != '"')
+			return readRecordingObject();
+
+		take();
+		nested = true;
+		Recording recording = readRecordingObject();
+		skipWhitespace();
+		if (next() != END)
+			throw error("Unexpected content after " + Recording.RECORDING);
+		nested = false;
+		return recording;
+	}
+
+	private Recording readRecordingObject() throws IOException {
+		String topic = null;
+		long startTime = 0;
+		long duration = 0;
+		Map<String, ScannerEvents> events = new HashMap<>();
+
+		expect('{');
+		if (!consume('}')) {
+			do {
+				String key = readString();
+				expect(':');
+				switch (key) {
+				case Recording.TOPIC:
+					topic = readString();
+					break;
+				case Recording.START_TIME:
+					startTime = readLong();
+					break;
+				case Recording.DURATION:
+					duration = readLong();
+					break;
+				case Recording.EVENTS:
+					readEvents(events);
+					break;
+				default:
+					skipValue();
+				}
+			} while (consume(','));
+			expect('}');
+		}
+
+		return new Recording(topic, startTime, duration, events);
+	}
+
+	private void readEvents(Map<String, ScannerEvents> events) throws IOException {
+		expect('[');
+		if (consume(']'))
+			return;
+
+		do {
+			String scanner = null;
+			ScannerEvents.Builder scannerEvents = new ScannerEvents.Builder();
+			expect('{');
+			if (!consume('}')) {
+				do {
+					String key = readString();
+					expect(':');
+					if (Recording.SCANNER.equals(key))
+						scanner = readString();
+					else if (Recording.SCANNER_EVENTS.equals(key))
+						readScannerEvents(scannerEvents);
+					else
+						skipValue();
+				} while (consume(','));
+				expect('}');
+			}
+			if (scanner == null)
+				throw error("Missing " + Recording.SCANNER);
+			events.put(scanner, scannerEvents.build());
+		} while (consume(','));
+		expect(']');
+	}
+
+	private void readScannerEvents(ScannerEvents.Builder scannerEvents) throws IOException {
+		expect('[');
+		if (consume(']'))
+			return;
+
+		do {
+			long time = 0;
+			boolean beacon = false;
+			expect('{');
+			if (!consume('}')) {
+				do {
+					String key = readString();
+					expect(':');
+					if (BeaconEvent.TIME.equals(key)) {
+						time = readLong();
+					} else if (BeaconEvent.BEACON.equals(key)) {
+						readString(text);
+						beaconParser.parse(text);
+						beacon = true;
+					} else {
+						skipValue();
+					}
+				} while (consume(','));
+				expect('}');
+			}
+			if (!beacon)
+				throw error("Missing " + BeaconEvent.BEACON);
+			scannerEvents.add(time, beaconParser.getId(), beaconParser.getRssi(), beaconParser.getTxpower());
+		} while (consume(','));
+		expect(']');
+	}
+
+	/*
+	 * Values
+	 */
+
+	private String readString() throws IOException {
+		readString(text);
+		return text.toString();
+	}
+
+	private void readString(StringBuilder builder) throws IOException {
+		builder.setLength(0);
+		expect('"');
+		for (;;) {
+			int c = next();
+			if (c == '"')
+				return;
+			if (c == '\\')
+				c = readEscaped();
+			if (c == END)
+				throw error("Unterminated string");
+			builder.append((char) c);
+		}
+	}
+
+	private long readLong() throws IOException {
+		skipWhitespace();
+		boolean negative = consumeRaw('-');
+		long value = 0;
+		int digits = 0;
+		int c;
+		while ((c = peek()) >= '0' && c <= '9') {
+			take();
+			value = value * 10 + (c - '0');
+			digits++;
+		}
+		if (digits == 0)
+			throw error("Expected number");
+		return negative ? -value : value;
+	}
+
+	private void skipValue() throws IOException {
+		skipWhitespace();
+		int c = peek();
+		switch (c) {
+		case '"':
+			readString(text);
+			break;
+		case '{':
+			take();
+			if (!consume('}')) {
+				do {
+					readString(text);
+					expect(':');
+					skipValue();
+				} while (consume(','));
+				expect('}');
+			}
+			break;
+		case '[':
+			take();
+			if (!consume(']')) {
+				do {
+					skipValue();
+				} while (consume(','));
+				expect(']');
+			}
+			break;
+		default:
+			// Numbers and literals
+			int length = 0;
+			while ((c = peek()) != END && c != ',' && c != '}' && c != ']' && !isWhitespace(c)) {
+				take();
+				length++;
+			}
+			if (length == 0)
+				throw error("Expected value");
+		}
+	}
+
+	/*
+	 * Characters
+	 */
+
+	private int readEscaped() throws IOException {
+		int c = next();
+		switch (c) {
+		case 'b':
+			return '\b';
+		case 'f':
+			return '\f';
+		case 'n':
+			return '\n';
+		case 'r':
+			return '\r';
+		case 't':
+			return '\t';
+		case 'u':
+			int value = 0;
+			for (int i = 0; i < 4; i++) {
+				int digit = Character.digit(next(), 16);
+				if (digit < 0)
+					throw error("Malformed unicode escape");
+				value = (value << 4) | digit;
+			}
+			return value;
+		case END:
+			throw error("Unterminated escape");
+		default:
+			return c;
+		}
+	}
+
+	private void expect(char expected) throws IOException {
+		skipWhitespace();
+		if (next() != expected)
+			throw error("Expected '" + expected + "'");
+	}
+
+	private boolean consume(char expected) throws IOException {
+		skipWhitespace();
+		return consumeRaw(expected);
+	}
+
+	private boolean consumeRaw(char expected) throws IOException {
+		if (peek() == expected) {
+			take();
+			return true;
+		}
+		return false;
+	}
+
+	private void skipWhitespace() throws IOException {
+		while (isWhitespace(peek()))
+			take();
+	}
+
+	private static boolean isWhitespace(int c) {
+		return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+	}
+
+	private int peek() throws IOException {
+		if (peeked < END)
+			peeked = decode();
+		return peeked;
+	}
+
+	private void take() {
+		peeked = END - 1;
+	}
+
+	private int next() throws IOException {
+		int c = peek();
+		take();
+		return c;
+	}
+
+	/**
+	 * Returns the next character of the current level. Inside the string encoded
+	 * recording, outer escapes are decoded and its closing quote is the end of the
+	 * input.
+	 */
+	private int decode() throws IOException {
+		int c = raw();
+		if (nested) {
+			if (c == '"')
+				return END;
+			if (c == '\\')
+				c = readOuterEscaped();
+		}
+		return c;
+	}
+
+	private int readOuterEscaped() throws IOException {
+		boolean wasNested = nested;
+		nested = false;
+		try {
+			return readEscaped();
+		} finally {
+			nested = wasNested;
+		}
+	}
+
+	private int raw() throws IOException {
+		if (position == limit) {
+			offset += limit;
+			limit = reader.read(buffer, 0, buffer.length);
+			position = 0;
+			if (limit <= 0) {
+				limit = 0;
+				return END;
+			}
+		}
+		return buffer[position++];
+	}
+
+	private IOException error(String message) {
+		return new IOException(message + " at offset " + (offset + position));
+	}
+}
@@ -0,0 +1,310 @@
+package iot.challenge.mide.location.accuracy.simulation;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Represents the events detected by a scanner, sorted by time, in columnar
+ * form. The block is composed of:
+ * <ul>
+ * <li>The number of events</li>
+ * <li>The lengths of the time and beacon columns</li>
+ * <li>The time column: delta-encoded times as zigzag varints</li>
+ * <li>The beacon column: indexes of the beacon table as varints</li>
+ * <li>The rssi column: one byte per event</li>
+ * <li>The txpower column: one byte per event</li>
+ * </ul>
+ *
+ * The beacon table maps the indexes of the beacon column to
+ * {@link BeaconDictionary} ids. The block can live in the heap or in a
+ * memory-mapped file ({@link RecordingFile}). It is immutable.
+ */
+public class ScannerEvents {
+
+	private static final int HEADER = 12;
+
+	private final ByteBuffer buffer;
+	private final int[] beacons;
+	private final int size;
+	private final int beaconOffset;
+	private final int rssiOffset;
+	private final int txpowerOffset;
+
+	ScannerEvents(ByteBuffer buffer, int[] beacons) {
+		this.buffer = buffer;
+		this.beacons = beacons;
+		this.size = buffer.getInt(0);
+		this.beaconOffset = HEADER + buffer.getInt(4);
+		this.rssiOffset = beaconOffset + buffer.getInt(8);
+		this.txpowerOffset = rssiOffset + size;
+		if (txpowerOffset + size != buffer.limit())
+			throw new IllegalArgumentException("Malformed scanner events");
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Returns a cursor positioned before the first event
+	 *
+	 * @return Cursor
+	 */
+	public EventCursor cursor() {
+		return new EventCursor(0);
+	}
+
+	/**
+	 * Returns a cursor positioned before the first event whose times are shifted
+	 * by 'offset' (e.g. to replay the events from a given time). The events are
+	 * not modified
+	 *
+	 * @param offset
+	 *            Offset of the times (ms)
+	 * @return Cursor
+	 */
+	public EventCursor cursor(long offset) {
+		return new EventCursor(offset);
+	}
+
+	/**
+	 * Returns the encoded block. It's symmetric to
+	 * {@link #ScannerEvents(ByteBuffer, int[])}
+	 */
+	ByteBuffer encoded() {
+		return buffer.duplicate();
+	}
+
+	/**
+	 * Returns the beacon table
+	 */
+	int[] beacons() {
+		return beacons;
+	}
+
+	/**
+	 * Sequential reader of the events
+	 */
+	public class EventCursor {
+
+		private int index;
+		private int timePosition;
+		private int beaconPosition;
+		private long time;
+		private int beacon;
+
+		private EventCursor(long offset) {
+			index = -1;
+			timePosition = HEADER;
+			beaconPosition = beaconOffset;
+			// Times are delta-encoded from 0
+			time = offset;
+		}
+
+		/**
+		 * Moves to the next event
+		 *
+		 * @return False if there are no more events
+		 */
+		public boolean next() {
+			if (index + 1 >= size) {
+				index = size;
+				return false;
+			}
+			index++;
+			time += readDelta();
+			beacon = beacons[readBeacon()];
+			return true;
+		}
+
+		public long getTime() {
+			return time;
+		}
+
+		public int getBeaconId() {
+			return beacon;
+		}
+
+		public int getRssi() {
+			return buffer.get(rssiOffset + index);
+		}
+
+		public int getTxpower() {
+			return buffer.get(txpowerOffset + index);
+		}
+
+		public BluetoothLeBeacon getBeacon() {
+			return new BluetoothLeBeacon(beacon, getRssi(), getTxpower());
+		}
+
+		public BeaconEvent getEvent() {
+			return new BeaconEvent(getBeacon(), time);
+		}
+
+		private long readDelta() {
+			long value = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = buffer.get(timePosition++);
+				value |= (long) (b & 0x7F) << shift;
+				shift += 7;
+			} while (b < 0);
+			return (value >>> 1) ^ -(value & 1);
+		}
+
+		private int readBeacon() {
+			int value = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = buffer.get(beaconPosition++);
+				value |= (b & 0x7F) << shift;
+				shift += 7;
+			} while (b < 0);
+			return value;
+		}
+	}
+
+	/**
+	 * Accumulates events in primitive columns and encodes them
+	 */
+	public static class Builder {
+
+		private long[] times;
+		private int[] ids;
+		private byte[] rssis;
+		private byte[] txpowers;
+		private int size;
+		private boolean sorted;
+
+		public Builder() {
+			times = new long[64];
+			ids = new int[64];
+			rssis = new byte[64];
+			txpowers = new byte[64];
+			size = 0;
+			sorted = true;
+		}
+
+		public Builder add(BeaconEvent event) {
+			BluetoothLeBeacon beacon = event.getBeacon();
+			return add(event.getTime(), beacon.getId(), beacon.getRssi(), beacon.getTxpower());
+		}
+
+		public Builder add(long time, int beacon, int rssi, int txpower) {
+			if (size == times.length) {
+				times = Arrays.copyOf(times, size * 2);
+				ids = Arrays.copyOf(ids, size * 2);
+				rssis = Arrays.copyOf(rssis, size * 2);
+				txpowers = Arrays.copyOf(txpowers, size * 2);
+			}
+			if (size > 0 && time < times[size - 1])
+				sorted = false;
+			times[size] = time;
+			ids[size] = beacon;
+			rssis[size] = toByte(rssi);
+			txpowers[size] = toByte(txpower);
+			size++;
+			return this;
+		}
+
+		public ScannerEvents build() {
+			if (!sorted)
+				sort();
+
+			ByteBuffer timeColumn = ByteBuffer.allocate(size * 10);
+			long previous = 0;
+			for (int i = 0; i < size; i++) {
+				writeDelta(timeColumn, times[i] - previous);
+				previous = times[i];
+			}
+
+			// Beacon table in order of first detection. Ids are dense, so they index
+			// the reverse table directly
+			int maxId = -1;
+			for (int i = 0; i < size; i++)
+				maxId = Math.max(maxId, ids[i]);
+			int[] indexes = new int[maxId + 1];
+			Arrays.fill(indexes, -1);
+			int[] table = new int[8];
+			int tableSize = 0;
+			ByteBuffer beaconColumn = ByteBuffer.allocate(size * 5);
+			for (int i = 0; i < size; i++) {
+				int index = indexes[ids[i]];
+				if (index < 0) {
+					if (tableSize == table.length)
+						table = Arrays.copyOf(table, tableSize * 2);
+					index = indexes[ids[i]] = tableSize;
+					table[tableSize++] = ids[i];
+				}
+				writeVarint(beaconColumn, index);
+			}
+
+			int timeLength = timeColumn.position();
+			int beaconLength = beaconColumn.position();
+			ByteBuffer buffer = ByteBuffer.allocate(HEADER + timeLength + beaconLength + 2 * size);
+			buffer.putInt(size);
+			buffer.putInt(timeLength);
+			buffer.putInt(beaconLength);
+			buffer.put(timeColumn.array(), 0, timeLength);
+			buffer.put(beaconColumn.array(), 0, beaconLength);
+			buffer.put(rssis, 0, size);
+			buffer.put(txpowers, 0, size);
+			((Buffer) buffer).flip();
+			return new ScannerEvents(buffer, Arrays.copyOf(table, tableSize));
+		}
+
+		// Stable, so events of the same instant keep their arrival order
+		private void sort() {
+			Integer[] order = new Integer[size];
+			for (int i = 0; i < size; i++)
+				order[i] = i;
+			Arrays.sort(order, (a, b) -> Long.compare(times[a], times[b]));
+
+			long[] sortedTimes = new long[size];
+			int[] sortedIds = new int[size];
+			byte[] sortedRssis = new byte[size];
+			byte[] sortedTxpowers = new byte[size];
+			for (int i = 0; i < size; i++) {
+				sortedTimes[i] = times[order[i]];
+				sortedIds[i] = ids[order[i]];
+				sortedRssis[i] = rssis[order[i]];
+				sortedTxpowers[i] = txpowers[order[i]];
+			}
+			times = sortedTimes;
+			ids = sortedIds;
+			rssis = sortedRssis;
+			txpowers = sortedTxpowers;
+			sorted = true;
+		}
+
+		private static void writeDelta(ByteBuffer buffer, long delta) {
+			long value = (delta << 1) ^ (delta >> 63);
+			while ((value & ~0x7FL) != 0) {
+				buffer.put((byte) ((value & 0x7F) | 0x80));
+				value >>>= 7;
+			}
+			buffer.put((byte) value);
+		}
+
+		private static void writeVarint(ByteBuffer buffer, int value) {
+			while ((value & ~0x7F) != 0) {
+				buffer.put((byte) ((value & 0x7F) | 0x80));
+				value >>>= 7;
+			}
+			buffer.put((byte) value);
+		}
+
+		private static byte toByte(int value) {
+			if (value < Byte.MIN_VALUE || value > Byte.MAX_VALUE)
+				throw new IllegalArgumentException("Value out of range: " + value);
+			return (byte) value;
+		}
+	}
+}
@@ -1,11 +1,7 @@
 package iot.challenge.mide.location.accuracy.simulation;
 
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.NavigableMap;
-import java.util.Queue;
-import java.util.TreeMap;
+import java.util.DoubleSummaryStatistics;
+import java.util.Properties;
 
 import iot.challenge.mide.location.accuracy.installation.Installation;
 import iot.challenge.mide.location.accuracy.installation.Point;
@@ -14,7 +10,16 @@ import iot.challenge.mide.location.accuracy.simulation.services.LocationService;
 import iot.challenge.mide.location.accuracy.simulation.services.PositioningService;
 import iot.challenge.mide.location.accuracy.trilaterization.DistanceAlgorithm;
 import iot.challenge.mide.location.accuracy.trilaterization.LeastSquaresAlgorithm;
-
+import iot.challenge.mide.location.accuracy.trilaterization.TrackingLeastSquaresSolver;
+
+/**
+ * Replay of a recording in an installation, located by a beacon at 'point'.
+ * The recording is only read: its events are saved with the replay time
+ * offset applied by the cursor ({@link ScannerEvents#cursor(long)}), so a
+ * recording can feed any number of simulations, concurrent or not. Each
+ * execution starts from new services, so executing a simulation again gives
+ * the same error
+ */
 public class Simulation {
 
 	private static String BEACON = "TEST";
@@ -22,6 +27,10 @@ public class Simulation {
 	private Installation installation;
 	private Point point;
 	private Recording recording;
+	private DistanceAlgorithm distanceAlgorithm;
+	private LeastSquaresAlgorithm leastSquaresAlgorithm;
+	// Null to read the configuration file
+	private Properties properties;
 	private long time;
 	private long end;
 	private double error;
@@ -32,7 +41,6 @@ public class Simulation {
 
 	private Simulation() {
 		super();
-		installationService = InstallationService.getInstance();
 	}
 
 	public Simulation(Installation installation, Point point, Recording recording, DistanceAlgorithm distanceAlgorithm,
@@ -41,15 +49,24 @@ public class Simulation {
 		this.installation = installation;
 		this.point = point;
 		this.recording = recording;
-		positioningService = new PositioningService(distanceAlgorithm, leastSquaresAlgorithm);
-		locationService = new LocationService(positioningService);
+		this.distanceAlgorithm = distanceAlgorithm;
+		this.leastSquaresAlgorithm = leastSquaresAlgorithm;
+	}
+
+	public Simulation(Installation installation, Point point, Recording recording, DistanceAlgorithm distanceAlgorithm,
+			LeastSquaresAlgorithm leastSquaresAlgorithm, Properties properties) {
+		this(installation, point, recording, distanceAlgorithm, leastSquaresAlgorithm);
+		this.properties = properties;
 	}
 
 	public void execute() {
+		createServices();
 		saveEvents();
-		List<Point> points = locationService.localization(time, end);
-		error = (points.size() > 0)
-				? (points.stream().mapToDouble(this::euclideanDistance).sum() / (double) points.size()) / 1000d
+		DoubleSummaryStatistics errors = locationService.localizations(time, end)
+				.mapToDouble(this::euclideanDistance)
+				.summaryStatistics();
+		error = (errors.getCount() > 0)
+				? (errors.getSum() / (double) errors.getCount()) / 1000d
 				: 0;
 	}
 
@@ -57,28 +74,31 @@ public class Simulation {
 		return Math.sqrt(Math.pow(other.getX() - point.getX(), 2) + Math.pow(other.getY() - point.getY(), 2));
 	}
 
+	// Isolated from other simulations and executions, so they can run concurrently
+	private void createServices() {
+		installationService = new InstallationService();
+		positioningService = new PositioningService(installationService, distanceAlgorithm, leastSquaresAlgorithm);
+		if (properties != null) {
+			positioningService.setTrackingSolver(TrackingLeastSquaresSolver.fromProperties(properties));
+			locationService = new LocationService(installationService, positioningService, properties);
+		} else {
+			locationService = new LocationService(installationService, positioningService);
+		}
+	}
+
 	private void saveEvents() {
 		installationService.addInstallation(installation);
-		installationService.getEvents().put(BEACON, new TreeMap<Long, Map<String, BeaconEvent>>());
 
 		time = end = System.currentTimeMillis();
 
 		recording.getEvents().forEach(this::save);
 	}
 
-	private void save(String scanner, Queue<BeaconEvent> events) {
-		NavigableMap<Long, Map<String, BeaconEvent>> beaconEvents = installationService.getEvents().get(BEACON);
-
-		for (BeaconEvent event : events) {
-			event.setTime(event.getTime() + this.time);
-			Long time = event.getTime();
-			Map<String, BeaconEvent> instantEvents = beaconEvents.get(time);
-			if (instantEvents == null) {
-				instantEvents = new HashMap<String, BeaconEvent>();
-				beaconEvents.put(time, instantEvents);
-			}
-			instantEvents.put(scanner, event);
-			end = (time > end) ? time : end;
+	private void save(String scanner, ScannerEvents events) {
+		ScannerEvents.EventCursor cursor = events.cursor(time);
+		while (cursor.next()) {
+			installationService.saveEvent(scanner, BEACON, cursor.getTime(), cursor.getRssi(), cursor.getTxpower());
+			end = (cursor.getTime() > end) ? cursor.getTime() : end;
 		}
 	}
 
@@ -86,4 +106,13 @@ public class Simulation {
 		return error;
 	}
 
+	/**
+	 * Returns the mean iterations per position of the tracking solver (0 if it
+	 * wasn't used)
+	 */
+	public double getIterations() {
+		long solutions = positioningService.getSolutions();
+		return (solutions > 0) ? positioningService.getIterations() / (double) solutions : 0;
+	}
+
 }
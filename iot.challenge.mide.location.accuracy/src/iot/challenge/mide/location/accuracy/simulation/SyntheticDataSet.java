@@ -0,0 +1,267 @@
+package iot.challenge.mide.location.accuracy.simulation;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import com.eclipsesource.json.JsonObject;
+
+import iot.challenge.mide.location.accuracy.installation.Installation;
+import iot.challenge.mide.location.accuracy.installation.Point;
+import iot.challenge.mide.location.accuracy.installation.Scanner;
+
+/**
+ * Synthetic data set of any size, in the {@link DataSet} formats. The
+ * installation is a square room with the scanners on a grid; each beacon is
+ * static at a random point of the room and has its own recording.
+ *
+ * Each scanner detects the beacons every its own scan period (with jitter),
+ * with the rssi of the log-distance path loss model plus gaussian noise, and
+ * misses the detections below its sensitivity. Data sets are deterministic:
+ * the same seed and parameters produce the same files. Beacons are generated
+ * from their own seed, so they can be generated in any order or in parallel.
+ */
+public class SyntheticDataSet {
+
+	public static final String SEED = "seed";
+	public static final String SCANNERS = "scanners";
+	public static final String SPACING = "spacing";
+	public static final String BEACONS = "beacons";
+	public static final String DURATION = "duration";
+	public static final String MIN_PERIOD = "period.min";
+	public static final String MAX_PERIOD = "period.max";
+	public static final String TXPOWER = "txpower";
+	public static final String PATH_LOSS_EXPONENT = "path.loss.exponent";
+	public static final String NOISE = "noise";
+	public static final String SENSITIVITY = "sensitivity";
+	public static final String TEXT = "text";
+
+	private static final String INSTALLATION = "synthetic";
+	private static final String TOPIC = "scanner";
+	private static final String UUID = "00000000-0000-0000-0000-000000000000";
+	private static final long START_TIME = 0L;
+
+	private long seed;
+	private int spacing;
+	private int beacons;
+	private long duration;
+	private int minPeriod;
+	private int maxPeriod;
+	private int txpower;
+	private double pathLossExponent;
+	private double noise;
+	private int sensitivity;
+	private boolean text;
+
+	private Installation installation;
+	private int[] periods;
+	private List<Point> points;
+
+	private SyntheticDataSet() {
+		super();
+	}
+
+	/**
+	 * @param properties
+	 *            Parameters: seed, scanners, spacing of their grid (mm), beacons,
+	 *            duration (s), scan periods (ms), txpower, path loss exponent,
+	 *            noise and sensitivity (dBm), and whether to write the text
+	 *            recordings too
+	 */
+	public SyntheticDataSet(Properties properties) {
+		this();
+		seed = Long.parseLong(properties.getProperty(SEED));
+		spacing = Integer.parseInt(properties.getProperty(SPACING));
+		beacons = Integer.parseInt(properties.getProperty(BEACONS));
+		duration = Long.parseLong(properties.getProperty(DURATION));
+		minPeriod = Integer.parseInt(properties.getProperty(MIN_PERIOD));
+		maxPeriod = Integer.parseInt(properties.getProperty(MAX_PERIOD));
+		txpower = Integer.parseInt(properties.getProperty(TXPOWER));
+		pathLossExponent = Double.parseDouble(properties.getProperty(PATH_LOSS_EXPONENT));
+		noise = Double.parseDouble(properties.getProperty(NOISE));
+		sensitivity = Integer.parseInt(properties.getProperty(SENSITIVITY));
+		text = Boolean.parseBoolean(properties.getProperty(TEXT));
+		int scanners = Integer.parseInt(properties.getProperty(SCANNERS));
+		if (scanners < 1 || spacing < 1 || beacons < 0 || duration < 0 || minPeriod < 1 || maxPeriod < minPeriod)
+			throw new IllegalArgumentException("Invalid synthetic data set: " + properties);
+
+		Random random = new Random(seed);
+		installation = createInstallation(scanners);
+		periods = new int[scanners];
+		for (int i = 0; i < scanners; i++)
+			periods[i] = minPeriod + random.nextInt(maxPeriod - minPeriod + 1);
+		points = createPoints(random);
+	}
+
+	public Installation getInstallation() {
+		return installation;
+	}
+
+	/**
+	 * Returns the point of each beacon
+	 */
+	public List<Point> getPoints() {
+		return points;
+	}
+
+	// Grid as square as possible
+	private Installation createInstallation(int scanners) {
+		int columns = (int) Math.ceil(Math.sqrt(scanners));
+		int rows = (scanners + columns - 1) / columns;
+		int width = Math.max(columns - 1, 1) * spacing;
+		int height = Math.max(rows - 1, 1) * spacing;
+
+		List<Point> room = new ArrayList<>();
+		room.add(new Point(0, 0));
+		room.add(new Point(width, 0));
+		room.add(new Point(width, height));
+		room.add(new Point(0, height));
+		room.add(new Point(0, 0));
+		Installation result = new Installation(INSTALLATION, room);
+		for (int i = 0; i < scanners; i++)
+			result.addScanner(
+					new Scanner(scannerAddr(i), new Point((i % columns) * spacing, (i / columns) * spacing)));
+		return result;
+	}
+
+	// A recording per point, so no two beacons share one
+	private List<Point> createPoints(Random random) {
+		Point corner = installation.getPoints().get(2);
+		if ((corner.getX() + 1L) * (corner.getY() + 1L) < beacons)
+			throw new IllegalArgumentException("Too many beacons for the room: " + beacons);
+
+		List<Point> result = new ArrayList<>(beacons);
+		Set<Long> used = new HashSet<>();
+		while (result.size() < beacons) {
+			int x = random.nextInt(corner.getX() + 1);
+			int y = random.nextInt(corner.getY() + 1);
+			if (used.add(((long) x << 32) | y))
+				result.add(new Point(x, y));
+		}
+		return Collections.unmodifiableList(result);
+	}
+
+	/**
+	 * Returns the recording of the beacon 'beacon'
+	 *
+	 * @param beacon
+	 *            Index of the beacon (0 to beacons - 1)
+	 * @return Recording
+	 */
+	public Recording record(int beacon) {
+		Random random = new Random(seed + 1 + beacon);
+		Point point = points.get(beacon);
+		int id = BeaconDictionary.getInstance().intern(identity(beacon));
+		long end = duration * 1000;
+
+		Map<String, ScannerEvents> events = new HashMap<>();
+		List<Scanner> scanners = installation.getScanners();
+		for (int i = 0; i < scanners.size(); i++) {
+			Scanner scanner = scanners.get(i);
+			double distance = Math.hypot(point.getX() - scanner.getPosition().getX(),
+					point.getY() - scanner.getPosition().getY());
+			int period = periods[i];
+			ScannerEvents.Builder builder = new ScannerEvents.Builder();
+			// Jitter of half a period either way
+			for (long time = random.nextInt(period); time < end; time += (period + 1) / 2 + random.nextInt(period)) {
+				int rssi = rssi(distance, txpower, pathLossExponent, noise, random);
+				if (rssi >= sensitivity)
+					builder.add(time, id, rssi, txpower);
+			}
+			ScannerEvents scannerEvents = builder.build();
+			if (!scannerEvents.isEmpty())
+				events.put(scanner.getAddr(), scannerEvents);
+		}
+		return new Recording(TOPIC, START_TIME, duration, events);
+	}
+
+	/**
+	 * Writes the installation and the recordings (binary, and text if
+	 * requested) to 'folder', which is created if needed. The recordings are
+	 * generated and written in parallel
+	 *
+	 * @param folder
+	 *            Data set folder
+	 * @throws IOException
+	 *             If a file cannot be written
+	 */
+	public void write(File folder) throws IOException {
+		Files.createDirectories(folder.toPath());
+		Files.write(new File(folder, DataSet.INSTALLATION).toPath(),
+				installation.toString().getBytes(StandardCharsets.UTF_8));
+		try {
+			IntStream.range(0, beacons).parallel().forEach(it -> write(folder, it));
+		} catch (UncheckedIOException e) {
+			throw new IOException(e.getMessage(), e.getCause());
+		}
+	}
+
+	private void write(File folder, int beacon) {
+		Point point = points.get(beacon);
+		String name = "x" + point.getX() + "y" + point.getY();
+		Recording recording = record(beacon);
+		try {
+			// The text form first, so the binary one isn't older and is the one loaded
+			if (text)
+				writeText(recording, new File(folder, name + DataSet.TEXT_EXTENSION));
+			RecordingFile.write(recording, new File(folder, name + DataSet.BINARY_EXTENSION));
+		} catch (IOException e) {
+			throw new UncheckedIOException(name + ": " + e.getMessage(), e);
+		}
+	}
+
+	// As read by RecordingReader
+	private static void writeText(Recording recording, File file) throws IOException {
+		JsonObject json = new JsonObject()
+				.add(Recording.DURATION, recording.getDuration().toString())
+				.add(Recording.TOPIC, recording.getTopic())
+				.add(Recording.RECORDING, recording.toString());
+		try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+			json.writeTo(writer);
+		}
+	}
+
+	private static String identity(int beacon) {
+		return "uuid: " + UUID + "; major: " + ((beacon >>> 16) + 1) + "; minor: " + (beacon & 0xFFFF)
+				+ "; protocol: iBeacon";
+	}
+
+	public static String scannerAddr(int index) {
+		return String.format("00:00:00:00:%02X:%02X", index >> 8, index & 0xFF);
+	}
+
+	/**
+	 * Returns the rssi of a beacon at 'distance' mm. of a scanner, by the
+	 * log-distance path loss model (1 m. reference) with gaussian noise
+	 *
+	 * @param distance
+	 *            Distance (mm)
+	 * @param txpower
+	 *            Rssi at 1 m.
+	 * @param exponent
+	 *            Path loss exponent
+	 * @param noise
+	 *            Standard deviation of the noise (dB)
+	 * @param random
+	 *            Source of the noise
+	 * @return Rssi (dBm)
+	 */
+	public static int rssi(double distance, int txpower, double exponent, double noise, Random random) {
+		double meters = Math.max(distance / 1000d, 0.1);
+		double rssi = txpower - 10 * exponent * Math.log10(meters) + random.nextGaussian() * noise;
+		return (int) Math.max(Byte.MIN_VALUE, Math.min(-1, Math.round(rssi)));
+	}
+}
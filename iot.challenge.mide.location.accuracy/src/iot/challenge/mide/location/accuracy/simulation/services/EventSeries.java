@@ -0,0 +1,328 @@
+package iot.challenge.mide.location.accuracy.simulation.services;
+
+import java.util.Arrays;
+
+/**
+ * Time series of the detections of a beacon by a scanner. Events are kept
+ * sorted by time in primitive columns (time, rssi and txpower) that grow in
+ * fixed-size chunks, so appending never copies the stored events.
+ *
+ * There is at most one event per instant; saving an event in an instant
+ * already stored replaces it. Saving an event before the last one shifts the
+ * indexes of the later ones; {@link #getModifications()} counts these changes.
+ *
+ * Old events are evicted in whole chunks ({@link #evict(long)}), so a series
+ * of bounded duration has bounded memory. Indexes are logical: they don't
+ * change when events are evicted, and the retained events are those in
+ * [{@link #getFirst()}, {@link #getEnd()}).
+ *
+ * The events are read through immutable snapshots ({@link #snapshot()}), a new
+ * one published when events are saved or evicted. Published events are never
+ * written again: appending writes after them, saving an event before the last
+ * one copies the chunks it changes, and evicted chunks are dropped instead of
+ * reused. The read methods of the series read its current snapshot.
+ *
+ * Writers synchronize on the series (see {@link EventStore}); readers take a
+ * snapshot and need no lock.
+ */
+public class EventSeries {
+
+	static final int CHUNK_SHIFT = 10;
+	static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+	static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+	// Events being written, published by publish()
+	private long[][] times;
+	private short[][] rssis;
+	private byte[][] txpowers;
+	// Index of the first retained event, and number of retained events
+	private int base;
+	private int size;
+	private int modifications;
+	private boolean changed;
+
+	// The chunk arrays and the leading chunks read by the published snapshot
+	private boolean shared;
+	private int sharedChunks;
+	private volatile EventSnapshot snapshot;
+
+	// Removed from its store
+	private boolean retired;
+
+	public EventSeries() {
+		super();
+		times = new long[1][];
+		rssis = new short[1][];
+		txpowers = new byte[1][];
+		base = 0;
+		size = 0;
+		modifications = 0;
+		snapshot = EventSnapshot.EMPTY;
+	}
+
+	/**
+	 * Returns the events published
+	 */
+	public EventSnapshot snapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * Returns the number of retained events
+	 */
+	public int size() {
+		return snapshot.size();
+	}
+
+	public boolean isEmpty() {
+		return snapshot.isEmpty();
+	}
+
+	/**
+	 * Returns the index of the first retained event
+	 */
+	public int getFirst() {
+		return snapshot.getFirst();
+	}
+
+	/**
+	 * Returns the index after the last event
+	 */
+	public int getEnd() {
+		return snapshot.getEnd();
+	}
+
+	/**
+	 * Returns the number of saved events that were not appended (they replaced or
+	 * shifted stored events)
+	 */
+	public int getModifications() {
+		return snapshot.getModifications();
+	}
+
+	/**
+	 * Returns true if the series was removed from its store, so events saved in
+	 * it would be lost
+	 */
+	public boolean isRetired() {
+		return retired;
+	}
+
+	void retire() {
+		retired = true;
+	}
+
+	public long getTime(int index) {
+		return snapshot.getTime(index);
+	}
+
+	public short getRssi(int index) {
+		return snapshot.getRssi(index);
+	}
+
+	public byte getTxpower(int index) {
+		return snapshot.getTxpower(index);
+	}
+
+	/**
+	 * Returns the index of the first event at or after 'time'
+	 *
+	 * @param time
+	 *            Time
+	 * @return Index ({@link #getEnd()} if there is none)
+	 */
+	public int lowerBound(long time) {
+		return snapshot.lowerBound(time);
+	}
+
+	/**
+	 * Returns the index of the first event after 'time'
+	 *
+	 * @param time
+	 *            Time
+	 * @return Index ({@link #getEnd()} if there is none)
+	 */
+	public int upperBound(long time) {
+		return snapshot.upperBound(time);
+	}
+
+	/**
+	 * Saves an event and publishes it
+	 *
+	 * @param time
+	 *            Time
+	 * @param rssi
+	 *            RSSI
+	 * @param txpower
+	 *            TxPower
+	 * @throws IllegalArgumentException
+	 *             If the rssi or the txpower don't fit in their columns
+	 */
+	public void add(long time, int rssi, int txpower) {
+		put(time, rssi, txpower);
+		publish();
+	}
+
+	// Saves an event, to be published with the next ones
+	void put(long time, int rssi, int txpower) {
+		check(rssi, txpower);
+		int end = base + size;
+		if (size == 0 || time > time(end - 1)) {
+			// Usual case, events arrive in order
+			set(append(), time, rssi, txpower);
+		} else {
+			modifications++;
+			int index = search(time, base, end);
+			copy(index);
+			if (index == end || time(index) != time) {
+				append();
+				shift(index);
+			}
+			set(index, time, rssi, txpower);
+		}
+		changed = true;
+	}
+
+	/**
+	 * Checks that an event fits the columns: the rssi a short and the txpower a
+	 * byte
+	 *
+	 * @throws IllegalArgumentException
+	 *             If it doesn't
+	 */
+	static void check(int rssi, int txpower) {
+		if (rssi < Short.MIN_VALUE || rssi > Short.MAX_VALUE || txpower < Byte.MIN_VALUE
+				|| txpower > Byte.MAX_VALUE)
+			throw new IllegalArgumentException("Value out of range: rssi " + rssi + ", txpower " + txpower);
+	}
+
+	/**
+	 * Publishes the events saved since the last snapshot
+	 */
+	void publish() {
+		if (!changed)
+			return;
+		snapshot = new EventSnapshot(times, rssis, txpowers, base, size, modifications);
+		shared = true;
+		sharedChunks = (size + CHUNK_MASK) >>> CHUNK_SHIFT;
+		changed = false;
+	}
+
+	/**
+	 * Evicts the events before 'time' and publishes the series. Only whole chunks
+	 * are evicted (all of them if every event is before 'time'), so some older
+	 * events can remain
+	 *
+	 * @param time
+	 *            Time
+	 * @return Number of evicted events
+	 */
+	public int evict(long time) {
+		if (size == 0)
+			return 0;
+
+		int evicted;
+		int chunks;
+		if (time(base + size - 1) < time) {
+			evicted = size;
+			chunks = (size + CHUNK_MASK) >>> CHUNK_SHIFT;
+		} else {
+			chunks = 0;
+			while ((chunks + 1) * CHUNK_SIZE <= size && time(base + (chunks + 1) * CHUNK_SIZE - 1) < time)
+				chunks++;
+			if (chunks == 0)
+				return 0;
+			evicted = chunks * CHUNK_SIZE;
+		}
+
+		// Snapshots may still read the evicted chunks
+		times = drop(times, chunks);
+		rssis = drop(rssis, chunks);
+		txpowers = drop(txpowers, chunks);
+		shared = false;
+		sharedChunks = Math.max(sharedChunks - chunks, 0);
+
+		base += evicted;
+		size -= evicted;
+		changed = true;
+		publish();
+		return evicted;
+	}
+
+	private static <T> T[] drop(T[] chunks, int count) {
+		return Arrays.copyOfRange(chunks, count, chunks.length + count);
+	}
+
+	// Copies the published chunks from the one of 'index' before writing them
+	private void copy(int index) {
+		int chunk = (index - base) >>> CHUNK_SHIFT;
+		if (chunk >= sharedChunks)
+			return;
+		if (shared) {
+			times = times.clone();
+			rssis = rssis.clone();
+			txpowers = txpowers.clone();
+			shared = false;
+		}
+		for (int c = chunk; c < sharedChunks; c++) {
+			times[c] = times[c].clone();
+			rssis[c] = rssis[c].clone();
+			txpowers[c] = txpowers[c].clone();
+		}
+		sharedChunks = chunk;
+	}
+
+	private long time(int index) {
+		int i = index - base;
+		return times[i >>> CHUNK_SHIFT][i & CHUNK_MASK];
+	}
+
+	private int search(long time, int from, int to) {
+		int low = from;
+		int high = to;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (time(middle) < time)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		return low;
+	}
+
+	private int append() {
+		int index = size;
+		int chunk = index >>> CHUNK_SHIFT;
+		if (chunk == times.length) {
+			times = Arrays.copyOf(times, chunk * 2);
+			rssis = Arrays.copyOf(rssis, chunk * 2);
+			txpowers = Arrays.copyOf(txpowers, chunk * 2);
+			shared = false;
+		}
+		if (times[chunk] == null) {
+			times[chunk] = new long[CHUNK_SIZE];
+			rssis[chunk] = new short[CHUNK_SIZE];
+			txpowers[chunk] = new byte[CHUNK_SIZE];
+		}
+		size++;
+		return base + index;
+	}
+
+	// Moves the events from 'index' one position up
+	private void shift(int index) {
+		for (int i = base + size - 1; i > index; i--) {
+			int j = i - 1 - base;
+			set(i, times[j >>> CHUNK_SHIFT][j & CHUNK_MASK], rssis[j >>> CHUNK_SHIFT][j & CHUNK_MASK],
+					txpowers[j >>> CHUNK_SHIFT][j & CHUNK_MASK]);
+		}
+	}
+
+	private void set(int index, long time, int rssi, int txpower) {
+		int i = index - base;
+		int chunk = i >>> CHUNK_SHIFT;
+		int offset = i & CHUNK_MASK;
+		times[chunk][offset] = time;
+		rssis[chunk][offset] = (short) rssi;
+		txpowers[chunk][offset] = (byte) txpower;
+	}
+}
@@ -0,0 +1,110 @@
+package iot.challenge.mide.location.accuracy.simulation.services;
+
+/**
+ * Immutable version of an {@link EventSeries}: the events it had when the
+ * snapshot was published. Taking a snapshot is reading a reference, and it
+ * can be read while events are saved or evicted, without locks: the series
+ * never writes the events a snapshot can read (it copies them first).
+ *
+ * Indexes are the logical ones of the series.
+ */
+public final class EventSnapshot {
+
+	static final EventSnapshot EMPTY = new EventSnapshot(new long[0][], new short[0][], new byte[0][], 0, 0, 0);
+
+	private final long[][] times;
+	private final short[][] rssis;
+	private final byte[][] txpowers;
+	private final int base;
+	private final int size;
+	private final int modifications;
+
+	EventSnapshot(long[][] times, short[][] rssis, byte[][] txpowers, int base, int size, int modifications) {
+		super();
+		this.times = times;
+		this.rssis = rssis;
+		this.txpowers = txpowers;
+		this.base = base;
+		this.size = size;
+		this.modifications = modifications;
+	}
+
+	/**
+	 * Returns the number of events
+	 */
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Returns the index of the first event
+	 */
+	public int getFirst() {
+		return base;
+	}
+
+	/**
+	 * Returns the index after the last event
+	 */
+	public int getEnd() {
+		return base + size;
+	}
+
+	/**
+	 * Returns the modifications of the series when the snapshot was published
+	 * (see {@link EventSeries#getModifications()})
+	 */
+	public int getModifications() {
+		return modifications;
+	}
+
+	public long getTime(int index) {
+		int i = index - base;
+		return times[i >>> EventSeries.CHUNK_SHIFT][i & EventSeries.CHUNK_MASK];
+	}
+
+	public short getRssi(int index) {
+		int i = index - base;
+		return rssis[i >>> EventSeries.CHUNK_SHIFT][i & EventSeries.CHUNK_MASK];
+	}
+
+	public byte getTxpower(int index) {
+		int i = index - base;
+		return txpowers[i >>> EventSeries.CHUNK_SHIFT][i & EventSeries.CHUNK_MASK];
+	}
+
+	/**
+	 * Returns the index of the first event at or after 'time'
+	 *
+	 * @param time
+	 *            Time
+	 * @return Index ({@link #getEnd()} if there is none)
+	 */
+	public int lowerBound(long time) {
+		int low = base;
+		int high = getEnd();
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (getTime(middle) < time)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		return low;
+	}
+
+	/**
+	 * Returns the index of the first event after 'time'
+	 *
+	 * @param time
+	 *            Time
+	 * @return Index ({@link #getEnd()} if there is none)
+	 */
+	public int upperBound(long time) {
+		return (time == Long.MAX_VALUE) ? getEnd() : lowerBound(time + 1);
+	}
+}
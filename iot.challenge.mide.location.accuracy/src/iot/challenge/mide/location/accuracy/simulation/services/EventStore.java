@@ -0,0 +1,210 @@
+package iot.challenge.mide.location.accuracy.simulation.services;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Events of the beacons, as a time series per beacon and scanner
+ *
+ * The series are also partitioned by installation (shards), with the scanners
+ * of the {@link InstallationIndex}: a series is routed to the shard of each
+ * installation of its scanner when it's created, and the shards are rebuilt
+ * when the index changes. Series of scanners without installation are in no
+ * shard
+ *
+ * Threads can save, read and evict events concurrently. Each series is locked
+ * on its own by its writers (writers of different scanners or beacons don't
+ * wait for each other) and read through snapshots, and the maps are
+ * concurrent, so readers can iterate them while series are added. Creating,
+ * removing and routing series lock the store. A series removed from the store
+ * is retired: {@link #write(String, String, Consumer)} never writes in a
+ * retired series, so no event saved concurrently with an eviction is lost
+ */
+public class EventStore {
+
+	// Beacon -> Scanner -> EventSeries
+	private final Map<String, Map<String, EventSeries>> events;
+	// Installation -> Beacon -> Scanner -> EventSeries
+	private volatile Map<String, Map<String, Map<String, EventSeries>>> shards;
+	private InstallationIndex index;
+
+	public EventStore() {
+		super();
+		events = new ConcurrentHashMap<>();
+		shards = new ConcurrentHashMap<>();
+		index = InstallationIndex.empty();
+	}
+
+	/**
+	 * Routes the series with the scanners of 'index'. The shards are replaced
+	 * when complete, so concurrent readers see either the old or the new ones
+	 *
+	 * @param index
+	 *            Installations
+	 */
+	public synchronized void setIndex(InstallationIndex index) {
+		Map<String, Map<String, Map<String, EventSeries>>> shards = new ConcurrentHashMap<>();
+		events.forEach((beacon, scanners) -> scanners
+				.forEach((scanner, series) -> route(index, shards, beacon, scanner, series)));
+		this.index = index;
+		this.shards = shards;
+	}
+
+	/**
+	 * Returns the series of the scanners of 'installation'
+	 *
+	 * @param installation
+	 *            Installation id
+	 * @return Beacon -> Scanner -> EventSeries
+	 */
+	public Map<String, Map<String, EventSeries>> getShard(String installation) {
+		return shards.getOrDefault(installation, Collections.emptyMap());
+	}
+
+	/**
+	 * Returns the series of every beacon
+	 *
+	 * @return Beacon -> Scanner -> EventSeries
+	 */
+	public Map<String, Map<String, EventSeries>> getBeacons() {
+		return events;
+	}
+
+	/**
+	 * Returns the series of 'beacon' detections by 'scanner', creating it if it
+	 * doesn't exist
+	 *
+	 * @param beacon
+	 *            Beacon
+	 * @param scanner
+	 *            Scanner
+	 * @return Series
+	 */
+	public EventSeries getSeries(String beacon, String scanner) {
+		Map<String, EventSeries> scanners = events.get(beacon);
+		EventSeries result = (scanners == null) ? null : scanners.get(scanner);
+		return (result != null) ? result : createSeries(beacon, scanner);
+	}
+
+	private synchronized EventSeries createSeries(String beacon, String scanner) {
+		Map<String, EventSeries> scanners = events.computeIfAbsent(beacon, it -> new ConcurrentHashMap<>());
+		EventSeries result = scanners.get(scanner);
+		if (result == null) {
+			result = new EventSeries();
+			scanners.put(scanner, result);
+			route(index, shards, beacon, scanner, result);
+		}
+		return result;
+	}
+
+	private static void route(InstallationIndex index, Map<String, Map<String, Map<String, EventSeries>>> shards,
+			String beacon, String scanner, EventSeries series) {
+		for (String installation : index.getInstallations(scanner))
+			shards.computeIfAbsent(installation, it -> new ConcurrentHashMap<>())
+					.computeIfAbsent(beacon, it -> new ConcurrentHashMap<>())
+					.put(scanner, series);
+	}
+
+	private void unroute(String beacon, String scanner) {
+		for (String installation : index.getInstallations(scanner)) {
+			Map<String, Map<String, EventSeries>> shard = shards.get(installation);
+			Map<String, EventSeries> scanners = (shard == null) ? null : shard.get(beacon);
+			if (scanners != null) {
+				scanners.remove(scanner);
+				if (scanners.isEmpty())
+					shard.remove(beacon);
+			}
+		}
+	}
+
+	/**
+	 * Passes the series of 'beacon' detections by 'scanner' to 'writer' while
+	 * holding its lock, and publishes the events saved
+	 *
+	 * @param beacon
+	 *            Beacon
+	 * @param scanner
+	 *            Scanner
+	 * @param writer
+	 *            Saves events in the series
+	 */
+	public void write(String beacon, String scanner, Consumer<EventSeries> writer) {
+		while (true) {
+			EventSeries series = getSeries(beacon, scanner);
+			synchronized (series) {
+				// A retired series was removed after being looked up
+				if (!series.isRetired()) {
+					writer.accept(series);
+					series.publish();
+					return;
+				}
+			}
+		}
+	}
+
+	public void add(String beacon, String scanner, long time, int rssi, int txpower) {
+		write(beacon, scanner, series -> series.add(time, rssi, txpower));
+	}
+
+	/**
+	 * Evicts the events before 'time' ({@link EventSeries#evict(long)}), and the
+	 * series and beacons left without events
+	 *
+	 * @param time
+	 *            Time
+	 * @return Number of evicted events
+	 */
+	public int evict(long time) {
+		int result = 0;
+		for (Map.Entry<String, Map<String, EventSeries>> beacon : events.entrySet()) {
+			for (Map.Entry<String, EventSeries> scanner : beacon.getValue().entrySet()) {
+				EventSeries series = scanner.getValue();
+				boolean empty;
+				synchronized (series) {
+					result += series.evict(time);
+					empty = series.isEmpty();
+				}
+				if (empty)
+					removeIfEmpty(beacon.getKey(), scanner.getKey(), series);
+			}
+		}
+		return result;
+	}
+
+	// Events may have been saved in 'series' since it was found empty
+	private synchronized void removeIfEmpty(String beacon, String scanner, EventSeries series) {
+		Map<String, EventSeries> scanners = events.get(beacon);
+		if (scanners == null || scanners.get(scanner) != series)
+			return;
+		synchronized (series) {
+			if (!series.isEmpty())
+				return;
+			series.retire();
+		}
+		scanners.remove(scanner);
+		unroute(beacon, scanner);
+		if (scanners.isEmpty())
+			events.remove(beacon);
+	}
+
+	public synchronized void remove(String beacon) {
+		Map<String, EventSeries> scanners = events.remove(beacon);
+		if (scanners != null)
+			scanners.values().forEach(EventStore::retire);
+		shards.values().forEach(it -> it.remove(beacon));
+	}
+
+	public synchronized void clear() {
+		events.values().forEach(scanners -> scanners.values().forEach(EventStore::retire));
+		events.clear();
+		shards.clear();
+	}
+
+	private static void retire(EventSeries series) {
+		synchronized (series) {
+			series.retire();
+		}
+	}
+}
@@ -0,0 +1,153 @@
+package iot.challenge.mide.location.accuracy.simulation.services;
+
+import java.util.Arrays;
+
+/**
+ * Events in a time window, as index ranges of the stored series. The window is
+ * composed of groups (installation and beacon), each one with an entry per
+ * scanner that detected the beacon: the scanner, its series, the snapshot of
+ * the series taken for the window and the range [from, to) of the snapshot in
+ * the window.
+ *
+ * Instances are meant to be reused: filling a window allocates nothing once
+ * its arrays have grown enough.
+ *
+ * The window reads its snapshots, so events can be saved or evicted while it's
+ * read.
+ */
+public class EventWindow {
+
+	private long start;
+	private long end;
+
+	private int groups;
+	private String[] installations;
+	private String[] beacons;
+	private int[] groupEnds;
+
+	private int entries;
+	private String[] scanners;
+	private EventSeries[] series;
+	private EventSnapshot[] snapshots;
+	private int[] froms;
+	private int[] tos;
+
+	public EventWindow() {
+		super();
+		installations = new String[4];
+		beacons = new String[4];
+		groupEnds = new int[4];
+		scanners = new String[16];
+		series = new EventSeries[16];
+		snapshots = new EventSnapshot[16];
+		froms = new int[16];
+		tos = new int[16];
+	}
+
+	public long getStart() {
+		return start;
+	}
+
+	public long getEnd() {
+		return end;
+	}
+
+	public int getGroups() {
+		return groups;
+	}
+
+	public String getInstallation(int group) {
+		return installations[group];
+	}
+
+	public String getBeacon(int group) {
+		return beacons[group];
+	}
+
+	/**
+	 * Returns the first entry of 'group'
+	 */
+	public int getFirstEntry(int group) {
+		return (group == 0) ? 0 : groupEnds[group - 1];
+	}
+
+	/**
+	 * Returns the entry after the last one of 'group'
+	 */
+	public int getEndEntry(int group) {
+		return groupEnds[group];
+	}
+
+	/**
+	 * Returns the number of entries (of every group)
+	 */
+	public int getEntries() {
+		return entries;
+	}
+
+	public String getScanner(int entry) {
+		return scanners[entry];
+	}
+
+	public EventSeries getSeries(int entry) {
+		return series[entry];
+	}
+
+	public EventSnapshot getSnapshot(int entry) {
+		return snapshots[entry];
+	}
+
+	public int getFrom(int entry) {
+		return froms[entry];
+	}
+
+	public int getTo(int entry) {
+		return tos[entry];
+	}
+
+	void clear(long start, long end) {
+		this.start = start;
+		this.end = end;
+		Arrays.fill(installations, 0, groups, null);
+		Arrays.fill(beacons, 0, groups, null);
+		Arrays.fill(scanners, 0, entries, null);
+		Arrays.fill(series, 0, entries, null);
+		Arrays.fill(snapshots, 0, entries, null);
+		groups = 0;
+		entries = 0;
+	}
+
+	void addEntry(String scanner, EventSeries eventSeries, EventSnapshot snapshot, int from, int to) {
+		if (entries == scanners.length) {
+			int length = entries * 2;
+			scanners = Arrays.copyOf(scanners, length);
+			series = Arrays.copyOf(series, length);
+			froms = Arrays.copyOf(froms, length);
+			tos = Arrays.copyOf(tos, length);
+			snapshots = Arrays.copyOf(snapshots, length);
+		}
+		scanners[entries] = scanner;
+		series[entries] = eventSeries;
+		froms[entries] = from;
+		snapshots[entries] = snapshot;
+		tos[entries] = to;
+		entries++;
+	}
+
+	// Groups the entries added since the previous group, if any
+	void closeGroup(String installation, String beacon) {
+		if (entries == ((groups == 0) ? 0 : groupEnds[groups - 1]))
+			return;
+
+		if (groups == installations.length) {
+			int length = groups * 2;
+			installations = Arrays.copyOf(installations, length);
+			beacons = Arrays.copyOf(beacons, length);
+			groupEnds = Arrays.copyOf(groupEnds, length);
+		}
+		installations[groups] = installation;
+		beacons[groups] = beacon;
+		groupEnds[groups] = entries;
+		groups++;
+	}
+}
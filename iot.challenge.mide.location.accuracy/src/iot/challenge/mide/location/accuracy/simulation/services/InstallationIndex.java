@@ -0,0 +1,160 @@
+package iot.challenge.mide.location.accuracy.simulation.services;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import iot.challenge.mide.location.accuracy.installation.Installation;
+import iot.challenge.mide.location.accuracy.installation.Point;
+import iot.challenge.mide.location.accuracy.installation.Scanner;
+
+/**
+ * Immutable index of the scanners of a set of installations. Each scanner of
+ * an installation gets a dense id (0, 1, ...) and its position is kept in
+ * primitive arrays, so finding a scanner by installation and address and
+ * reading its position take constant time.
+ *
+ * An address can belong to several installations (one id in each). If an
+ * installation repeats an address, its first scanner with the address is
+ * indexed.
+ */
+public class InstallationIndex {
+
+	private static final int[] NONE = new int[0];
+
+	private static final InstallationIndex EMPTY = new InstallationIndex(Collections.emptyList());
+
+	// Address -> Ids (one per installation)
+	private final Map<String, int[]> ids;
+	// Id -> Installation, address and position
+	private final String[] installations;
+	private final String[] addrs;
+	private final double[] xs;
+	private final double[] ys;
+
+	/**
+	 * Compiles the index of 'installations'
+	 *
+	 * @param installations
+	 *            Installations
+	 */
+	public InstallationIndex(Collection<Installation> installations) {
+		super();
+		List<String> installationIds = new ArrayList<>();
+		List<Scanner> scanners = new ArrayList<>();
+		Map<String, int[]> ids = new HashMap<>();
+		for (Installation installation : installations) {
+			if (installation.getScanners() == null)
+				continue;
+			for (Scanner scanner : installation.getScanners()) {
+				int[] current = ids.getOrDefault(scanner.getAddr(), NONE);
+				if (indexOf(current, installationIds, installation.getId()) < 0) {
+					current = Arrays.copyOf(current, current.length + 1);
+					current[current.length - 1] = scanners.size();
+					ids.put(scanner.getAddr(), current);
+					installationIds.add(installation.getId());
+					scanners.add(scanner);
+				}
+			}
+		}
+
+		int size = scanners.size();
+		this.ids = ids;
+		this.installations = installationIds.toArray(new String[size]);
+		this.addrs = new String[size];
+		this.xs = new double[size];
+		this.ys = new double[size];
+		for (int i = 0; i < size; i++) {
+			Scanner scanner = scanners.get(i);
+			Point position = scanner.getPosition();
+			addrs[i] = scanner.getAddr();
+			xs[i] = position.getX();
+			ys[i] = position.getY();
+		}
+	}
+
+	/**
+	 * Returns the index without installations
+	 */
+	public static InstallationIndex empty() {
+		return EMPTY;
+	}
+
+	/**
+	 * Returns the number of scanners (ids are 0 to size - 1)
+	 */
+	public int size() {
+		return addrs.length;
+	}
+
+	/**
+	 * Returns the id of the scanner 'addr' of 'installation'
+	 *
+	 * @param installation
+	 *            Installation id
+	 * @param addr
+	 *            Scanner address
+	 * @return Id, -1 if the installation has no such scanner
+	 */
+	public int getScanner(String installation, String addr) {
+		int[] candidates = ids.get(addr);
+		if (candidates == null)
+			return -1;
+		for (int id : candidates)
+			if (installations[id].equals(installation))
+				return id;
+		return -1;
+	}
+
+	public boolean hasScanner(String installation, String addr) {
+		return getScanner(installation, addr) >= 0;
+	}
+
+	/**
+	 * Returns the installation of the scanner 'addr' (the first one indexed if
+	 * several installations have it), null if there is none
+	 */
+	public String getInstallation(String addr) {
+		int[] candidates = ids.get(addr);
+		return (candidates == null) ? null : installations[candidates[0]];
+	}
+
+	/**
+	 * Returns the installations of the scanner 'addr'
+	 */
+	public List<String> getInstallations(String addr) {
+		int[] candidates = ids.getOrDefault(addr, NONE);
+		List<String> result = new ArrayList<>(candidates.length);
+		for (int id : candidates)
+			result.add(installations[id]);
+		return result;
+	}
+
+	public String getInstallation(int scanner) {
+		return installations[scanner];
+	}
+
+	public String getAddr(int scanner) {
+		return addrs[scanner];
+	}
+
+	public double getX(int scanner) {
+		return xs[scanner];
+	}
+
+	public double getY(int scanner) {
+		return ys[scanner];
+	}
+
+	// Position in 'candidates' of the id of 'installation'
+	private static int indexOf(int[] candidates, List<String> installations, String installation) {
+		for (int i = 0; i < candidates.length; i++)
+			if (installations.get(candidates[i]).equals(installation))
+				return i;
+		return -1;
+	}
+}
@@ -1,32 +1,40 @@
 package iot.challenge.mide.location.accuracy.simulation.services;
 
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.NavigableMap;
-import java.util.TreeMap;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
 
 import iot.challenge.mide.location.accuracy.installation.Installation;
 import iot.challenge.mide.location.accuracy.simulation.BeaconEvent;
+import iot.challenge.mide.location.accuracy.simulation.BluetoothLeBeacon;
 
 /**
- * InstallationService
+ * InstallationService. Besides the shared instance, independent services can
+ * be created to keep installations and events apart (e.g. one per simulation)
+ *
+ * The scanners are looked up in an {@link InstallationIndex}, compiled again
+ * when an installation is added, modified or removed. The events are routed to
+ * the installations of their scanners when they are saved, so a window of an
+ * installation only visits the events of its scanners
+ *
+ * Events are saved and evicted concurrently, locking only the series involved
+ * (see {@link EventStore}): scanners publishing at the same time don't wait for
+ * each other. Windows read snapshots of the series, without locks. Changes of
+ * the installations are serialized
  */
 public class InstallationService {
 
 	private static InstallationService instance = new InstallationService();
 
 	private Map<String, Installation> installations;
-	private Map<String, NavigableMap<Long, Map<String, BeaconEvent>>> events;
+	private volatile InstallationIndex index;
+	private EventStore events;
 
-	private InstallationService() {
+	public InstallationService() {
 		super();
-		installations = new HashMap<>();
-		events = new HashMap<>();
+		installations = new ConcurrentHashMap<>();
+		index = InstallationIndex.empty();
+		events = new EventStore();
 	}
 
 	public static InstallationService getInstance() {
@@ -37,78 +45,67 @@ public class InstallationService {
 		return installations;
 	}
 
-	public Map<String, NavigableMap<Long, Map<String, BeaconEvent>>> getEvents() {
+	public EventStore getEvents() {
 		return events;
 	}
 
-	public Map<String, Map<String, Map<String, List<BeaconEvent>>>> getEventWindow(long start, long end) {
-		// Beacon -> Scanner -> List<BeaconEvent>
-		Map<String, Map<String, List<BeaconEvent>>> events = getAllEventsInWindow(start, end);
-		return mapEventsByInstallations(events);
+	/**
+	 * Returns the index of the current installations
+	 */
+	public InstallationIndex getIndex() {
+		return index;
 	}
 
-	// Beacon -> Scanner -> List<BeaconEvent>
-	protected Map<String, Map<String, List<BeaconEvent>>> getAllEventsInWindow(long start, long end) {
-
-		// Beacon -> Scanner -> List<BeaconEvent>
-		Map<String, Map<String, List<BeaconEvent>>> result = new HashMap<>();
-
-		// Iterate over events
-		events.forEach((beacon, beaconEvents) -> {
-
-			// Events in window
-			Collection<Map<String, BeaconEvent>> window = beaconEvents.subMap(start, true, end, true).values();
-
-			if (!window.isEmpty()) {
-
-				// Beacon detection in window
-				// Scanner -> Queue<BeaconEvent>
-				Map<String, List<BeaconEvent>> byBeacon = new HashMap<>();
-				result.put(beacon, byBeacon);
-
-				// Window is a collection of maps (each map contains all detections of a beacon
-				// in an instant)
-				window.stream().forEach(map -> {
-					map.forEach((scanner, beaconEvent) -> {
-						List<BeaconEvent> byScanner = byBeacon.get(scanner);
-						if (byScanner == null) {
-							byScanner = new ArrayList<>();
-							byBeacon.put(scanner, byScanner);
-						}
-						byScanner.add(beaconEvent);
-					});
-				});
-			}
-		});
-
-		return result;
+	/**
+	 * Fills 'window' with the events between 'start' and 'end' (both inclusive),
+	 * grouped by installation and beacon
+	 *
+	 * @param start
+	 *            Window start
+	 * @param end
+	 *            Window end
+	 * @param window
+	 *            Window to fill
+	 * @return 'window'
+	 */
+	public EventWindow getEventWindow(long start, long end, EventWindow window) {
+		window.clear(start, end);
+		installations.keySet().forEach(installation -> addEvents(installation, start, end, window));
+		return window;
 	}
 
-	// Installation -> Beacon -> Scanner -> List<BeaconEvent>
-	protected Map<String, Map<String, Map<String, List<BeaconEvent>>>> mapEventsByInstallations(
-			Map<String, Map<String, List<BeaconEvent>>> events) {
-
-		Map<String, Map<String, Map<String, List<BeaconEvent>>>> result = new HashMap<>();
-
-		installations.keySet().forEach(installation -> {
-			Map<String, Map<String, List<BeaconEvent>>> eventsByInstallation = new HashMap<>();
-
-			events.forEach((beacon, detections) -> {
-				Map<String, List<BeaconEvent>> byInstallation = detections.entrySet().stream()
-						.filter(entry -> hasScanner(installation, entry.getKey()))
-						.collect(Collectors.toMap(Entry::getKey, it -> new ArrayList<>(it.getValue())));
-
-				if (!byInstallation.isEmpty())
-					eventsByInstallation.put(beacon, byInstallation);
+	/**
+	 * Fills 'window' with the events of 'installation' between 'start' and 'end'
+	 * (both inclusive), grouped by beacon
+	 *
+	 * @param installation
+	 *            Installation id
+	 * @param start
+	 *            Window start
+	 * @param end
+	 *            Window end
+	 * @param window
+	 *            Window to fill
+	 * @return 'window'
+	 */
+	public EventWindow getEventWindow(String installation, long start, long end, EventWindow window) {
+		window.clear(start, end);
+		addEvents(installation, start, end, window);
+		return window;
+	}
 
+	// Beacon -> Scanner -> Range
+	private void addEvents(String installation, long start, long end, EventWindow window) {
+		events.getShard(installation).forEach((beacon, detections) -> {
+			detections.forEach((scanner, series) -> {
+				EventSnapshot snapshot = series.snapshot();
+				int from = snapshot.lowerBound(start);
+				int to = snapshot.upperBound(end);
+				if (from < to)
+					window.addEntry(scanner, series, snapshot, from, to);
 			});
-
-			if (!eventsByInstallation.isEmpty())
-				result.put(installation, eventsByInstallation);
-
+			window.closeGroup(installation, beacon);
 		});
-
-		return result;
 	}
 
 	public Installation getInstallation(String id) {
@@ -116,46 +113,77 @@ public class InstallationService {
 	}
 
 	public void addInstallation(Installation installation) {
-		if (installation != null)
-			installations.put(installation.getId(), installation);
+		if (installation != null) {
+			synchronized (this) {
+				installations.put(installation.getId(), installation);
+				reindex();
+			}
+		}
 	}
 
 	public void removeInstallation(Installation installation) {
-		if (installation != null)
-			installations.remove(installation.getId());
+		if (installation != null) {
+			synchronized (this) {
+				installations.remove(installation.getId());
+				reindex();
+			}
+		}
+	}
+
+	private void reindex() {
+		index = new InstallationIndex(installations.values());
+		events.setIndex(index);
 	}
 
 	public void modifyInstallation(Installation installation) {
 		addInstallation(installation);
 	}
 
+	/**
+	 * Saves the detections of 'beacon' by 'scanner'. They are checked first, so
+	 * either all of them are saved or none
+	 *
+	 * @param scanner
+	 *            Scanner address
+	 * @param beacon
+	 *            Beacon
+	 * @param events
+	 *            Detections
+	 * @throws IllegalArgumentException
+	 *             If the rssi or the txpower of a detection is out of range
+	 *             ({@link EventSeries#add(long, int, int)})
+	 */
 	public void saveEvents(String scanner, String beacon, List<BeaconEvent> events) {
-		synchronized (this) {
-			NavigableMap<Long, Map<String, BeaconEvent>> beaconEvents = this.events.get(beacon);
-			if (beaconEvents == null) {
-				beaconEvents = new TreeMap<Long, Map<String, BeaconEvent>>();
-				this.events.put(beacon, beaconEvents);
-			}
-
+		for (BeaconEvent event : events)
+			EventSeries.check(event.getBeacon().getRssi(), event.getBeacon().getTxpower());
+		this.events.write(beacon, scanner, series -> {
 			for (BeaconEvent event : events) {
-				Long time = event.getTime();
-				Map<String, BeaconEvent> instantEvents = beaconEvents.get(time);
-				if (instantEvents == null) {
-					instantEvents = new HashMap<String, BeaconEvent>();
-					beaconEvents.put(time, instantEvents);
-				}
-
-				instantEvents.put(scanner, event);
+				BluetoothLeBeacon detection = event.getBeacon();
+				series.put(event.getTime(), detection.getRssi(), detection.getTxpower());
 			}
-		}
+		});
+	}
+
+	public void saveEvent(String scanner, String beacon, long time, int rssi, int txpower) {
+		events.add(beacon, scanner, time, rssi, txpower);
+	}
+
+	/**
+	 * Evicts the events before 'time' (see {@link EventStore#evict(long)})
+	 *
+	 * @param time
+	 *            Time
+	 * @return Number of evicted events
+	 */
+	public int evictEvents(long time) {
+		return events.evict(time);
+	}
+
+	public void removeEvents(String beacon) {
+		events.remove(beacon);
 	}
 
 	public boolean hasScanner(String installation, String scanner) {
-		return installations.get(installation)
-				.getScanners()
-				.stream()
-				.filter(it -> it.getAddr().equals(scanner))
-				.findFirst()
-				.isPresent();
+		return index.hasScanner(installation, scanner);
 	}
 }
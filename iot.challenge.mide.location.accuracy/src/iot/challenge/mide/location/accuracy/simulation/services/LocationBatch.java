@@ -0,0 +1,101 @@
+package iot.challenge.mide.location.accuracy.simulation.services;
+
+import java.util.Arrays;
+
+import iot.challenge.mide.location.accuracy.installation.Point;
+
+/**
+ * Locations of the beacons of a publication: installation, beacon and
+ * position (mm) of each located beacon, in primitive columns. The columns grow
+ * to the largest number of beacons, so a batch can be reused for every
+ * publication
+ */
+public class LocationBatch {
+
+	private String[] installations;
+	private String[] beacons;
+	private int[] xs;
+	private int[] ys;
+	private boolean[] located;
+	private int size;
+
+	public LocationBatch() {
+		super();
+		installations = new String[0];
+		beacons = new String[0];
+		xs = new int[0];
+		ys = new int[0];
+		located = new boolean[0];
+		size = 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public String getInstallation(int index) {
+		return installations[index];
+	}
+
+	public String getBeacon(int index) {
+		return beacons[index];
+	}
+
+	public int getX(int index) {
+		return xs[index];
+	}
+
+	public int getY(int index) {
+		return ys[index];
+	}
+
+	public Point getPoint(int index) {
+		return new Point(xs[index], ys[index]);
+	}
+
+	/**
+	 * Prepares 'slots' empty slots, to be set (concurrently, each slot by one
+	 * thread) and then compacted
+	 */
+	void reset(int slots) {
+		if (located.length < slots) {
+			installations = new String[slots];
+			beacons = new String[slots];
+			xs = new int[slots];
+			ys = new int[slots];
+			located = new boolean[slots];
+		}
+		Arrays.fill(located, 0, slots, false);
+		size = slots;
+	}
+
+	void set(int slot, String installation, String beacon, int x, int y) {
+		installations[slot] = installation;
+		beacons[slot] = beacon;
+		xs[slot] = x;
+		ys[slot] = y;
+		located[slot] = true;
+	}
+
+	// Moves the located slots to the front, in order
+	void compact() {
+		int n = 0;
+		for (int i = 0; i < size; i++) {
+			if (located[i]) {
+				installations[n] = installations[i];
+				beacons[n] = beacons[i];
+				xs[n] = xs[i];
+				ys[n] = ys[i];
+				located[n] = true;
+				n++;
+			}
+		}
+		Arrays.fill(installations, n, size, null);
+		Arrays.fill(beacons, n, size, null);
+		size = n;
+	}
+}
@@ -3,23 +3,34 @@ package iot.challenge.mide.location.accuracy.simulation.services;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
-import java.util.Objects;
+import java.util.NoSuchElementException;
 import java.util.Properties;
-import java.util.function.ToDoubleFunction;
-import java.util.stream.Collectors;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
 import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import iot.challenge.mide.location.accuracy.Main;
 import iot.challenge.mide.location.accuracy.installation.Point;
-import iot.challenge.mide.location.accuracy.simulation.BeaconEvent;
-import iot.challenge.mide.location.accuracy.simulation.BluetoothLeBeacon;
 
 /**
  * LocationService provider
+ *
+ * Each publication evicts the events older than the retention time (seconds)
+ * before the publication; a retention time of 0 keeps every event
+ *
+ * The beacons of a publication are located independently, in parallel when
+ * there are at least {@value #PARALLEL_BEACONS} of them. The events are read
+ * from the snapshots of the window, so events can be saved while the locations
+ * are computed without blocking either
  */
 public class LocationService {
 
@@ -29,6 +40,15 @@ public class LocationService {
 	public static final String SCANNING_WINDOW = "scanning.window";
 	public static final String ATTENUATION = "attenuation";
 	public static final String CUTOFF_RATE = "cutoff.rate";
+	public static final String INCREMENTAL = "incremental";
+
+	private static final int PARALLEL_BEACONS = 16;
+
+	private static final ThreadLocal<OutlierFilter> OUTLIER_FILTERS = ThreadLocal.withInitial(OutlierFilter::new);
+	private static final ThreadLocal<ScannerResumes> RESUMES = ThreadLocal.withInitial(ScannerResumes::new);
+
+	// Weights of the valid rssis, then their products by the rssis
+	private static final ThreadLocal<double[]> WEIGHTS = ThreadLocal.withInitial(() -> new double[64]);
 
 	protected int retentionTime;
 	protected int publicationRate;
@@ -36,22 +56,52 @@ public class LocationService {
 	protected int scanningWindow;
 	protected double attenuation;
 	protected double cutoffRate;
+	protected boolean incremental;
 
+	protected InstallationService installationService;
 	protected PositioningService positioningService;
 
 	protected Map<String, NavigableMap<Long, Map<String, Point>>> locations;
 
+	protected EventWindow window;
+	protected LocationBatch batch;
+
+	// Incremental mode: state of the window of each series
+	protected Map<EventSeries, SlidingWindow> slidingWindows;
+	// Window of each entry of the current EventWindow
+	protected SlidingWindow[] entryWindows;
+	protected long step;
+	protected double[] weights;
+
 	private LocationService() {
 		super();
 		this.locations = new HashMap<>();
+		this.window = new EventWindow();
+		this.batch = new LocationBatch();
+		this.slidingWindows = new HashMap<>();
+		this.entryWindows = new SlidingWindow[0];
+		this.step = 0;
 	}
 
 	public LocationService(PositioningService positioningService) {
+		this(InstallationService.getInstance(), positioningService);
+	}
+
+	public LocationService(InstallationService installationService, PositioningService positioningService) {
 		this();
+		this.installationService = installationService;
 		this.positioningService = positioningService;
 		readProperties();
 	}
 
+	public LocationService(InstallationService installationService, PositioningService positioningService,
+			Properties properties) {
+		this();
+		this.installationService = installationService;
+		this.positioningService = positioningService;
+		configure(properties);
+	}
+
 	private void readProperties() {
 
 		FileInputStream input = null;
@@ -59,13 +109,7 @@ public class LocationService {
 			Properties properties = new Properties();
 			input = new FileInputStream(Main.CONFIG);
 			properties.load(input);
-
-			retentionTime = Integer.parseInt(properties.getProperty(RETENTION_TIME));
-			publicationRate = Integer.parseInt(properties.getProperty(PUBLICATION_RATE));
-			delay = Integer.parseInt(properties.getProperty(DELAY));
-			scanningWindow = Integer.parseInt(properties.getProperty(SCANNING_WINDOW));
-			attenuation = Double.parseDouble(properties.getProperty(ATTENUATION));
-			cutoffRate = Double.parseDouble(properties.getProperty(CUTOFF_RATE));
+			configure(properties);
 		} catch (Exception e) {
 			e.printStackTrace();
 
@@ -79,172 +123,298 @@ public class LocationService {
 		}
 	}
 
+	private void configure(Properties properties) {
+		retentionTime = Integer.parseInt(properties.getProperty(RETENTION_TIME));
+		publicationRate = Integer.parseInt(properties.getProperty(PUBLICATION_RATE));
+		delay = Integer.parseInt(properties.getProperty(DELAY));
+		scanningWindow = Integer.parseInt(properties.getProperty(SCANNING_WINDOW));
+		attenuation = Double.parseDouble(properties.getProperty(ATTENUATION));
+		cutoffRate = Double.parseDouble(properties.getProperty(CUTOFF_RATE));
+		incremental = Boolean.parseBoolean(properties.getProperty(INCREMENTAL, "false"));
+	}
+
 	public List<Point> localization(long current, long finish) {
 		List<Point> result = new ArrayList<>();
-		localization(current, finish, result);
+		localization(current, finish, result::add);
 		return result;
 	}
 
 	public void localization(long current, long finish, List<Point> result) {
-		long end = current - (delay * 1000l);
-		long start = end - scanningWindow;
-
-		Point point = computeLocation(start, end);
-		if (point != null)
-			result.add(point);
-
-		current += publicationRate;
-
-		if (current < finish)
-			localization(current, finish, result);
+		localization(current, finish, result::add);
 	}
 
-	// Installation -> Beacon -> Position
-	protected Point computeLocation(long start, long end) {
-
-		Point result = new Point();
-
-		// Installation -> Beacon -> Scanner -> Queue<BeaconEvent>
-		Map<String, Map<String, Map<String, List<BeaconEvent>>>> events = InstallationService.getInstance()
-				.getEventWindow(start,
-						end);
-
-		// Detections by installations
-		events.forEach((installation, detections) -> {
-
-			// Detections by beacons in installation
-			detections.forEach((beacon, beaconEvents) -> {
+	/**
+	 * Computes the locations from 'current' to 'finish', one per publication
+	 * (at least one), and passes them to 'sink' as they are computed
+	 *
+	 * @param current
+	 *            First publication
+	 * @param finish
+	 *            Publications end (exclusive)
+	 * @param sink
+	 *            Receiver of the locations
+	 */
+	public void localization(long current, long finish, Consumer<Point> sink) {
+		Iterator<Point> locations = new Localizations(current, finish);
+		while (locations.hasNext())
+			sink.accept(locations.next());
+	}
 
-				// Beacon position in installation
-				Point p = position(installation, beacon, beaconEvents, start, end);
-				if (p != null) {
-					result.setX(p.getX());
-					result.setY(p.getY());
-				}
-			});
+	/**
+	 * Returns the locations from 'current' to 'finish' as a lazy stream: each
+	 * location is computed when the stream requests it, so no publication is
+	 * buffered
+	 *
+	 * @param current
+	 *            First publication
+	 * @param finish
+	 *            Publications end (exclusive)
+	 * @return Locations
+	 */
+	public Stream<Point> localizations(long current, long finish) {
+		Spliterator<Point> spliterator = Spliterators.spliteratorUnknownSize(
+				new Localizations(current, finish),
+				Spliterator.ORDERED | Spliterator.NONNULL);
+		return StreamSupport.stream(spliterator, false);
+	}
 
-		});
+	/**
+	 * Computes the location of the publication at 'current' (with the events of
+	 * the scanning window that ends 'delay' seconds before)
+	 *
+	 * @param current
+	 *            Publication time
+	 * @return Location of the last beacon located, null if no beacon could be
+	 *         located
+	 */
+	public Point localization(long current) {
+		long end = getWindowEnd(current);
+		long start = end - scanningWindow;
+		return computeLocation(start, end);
+	}
 
-		return (result.getX() == null) ? null : result;
+	/**
+	 * Computes the locations of every beacon in the publication at 'current'
+	 *
+	 * @param current
+	 *            Publication time
+	 * @param result
+	 *            Batch to fill
+	 * @return 'result', with the beacons located
+	 */
+	public LocationBatch localization(long current, LocationBatch result) {
+		long end = getWindowEnd(current);
+		long start = end - scanningWindow;
+		return computeLocations(start, end, result);
 	}
 
-	protected Point position(String installation, String beacon, Map<String, List<BeaconEvent>> events, long start,
-			long end) {
-		List<String> scannerAddr = new ArrayList<>();
-		List<BeaconEvent> scannerEvents = new ArrayList<>();
-		events.forEach((scanner, detections) -> {
-			if (!detections.isEmpty()) {
-				BeaconEvent resume = resumeBeaconEvents(detections, start, end);
-				if (resume != null) {
-					scannerAddr.add(scanner);
-					scannerEvents.add(resume);
-				}
-			}
-		});
+	/**
+	 * Returns the end of the scanning window of the publication at 'current'
+	 */
+	public long getWindowEnd(long current) {
+		return current - (delay * 1000l);
+	}
 
-		return positioningService.position(installation, scannerAddr, scannerEvents);
+	public int getPublicationRate() {
+		return publicationRate;
 	}
 
-	protected BeaconEvent resumeBeaconEvents(List<BeaconEvent> events, long start, long end) {
-		BeaconEvent result = null;
+	// Publications that produced a location, computed on demand
+	private class Localizations implements Iterator<Point> {
 
-		List<BeaconEvent> validEvents = removeOutliersEvents(events);
-		if (!validEvents.isEmpty()) {
-			int rssi = aggregateRssis(validEvents, start, end);
-			result = validEvents.get(0).copy();
-			result.getBeacon().setRssi(rssi);
-		}
+		private long current;
+		private final long finish;
+		private boolean finished;
+		private Point next;
 
-		return result;
-	}
+		Localizations(long current, long finish) {
+			this.current = current;
+			this.finish = finish;
+			this.finished = false;
+		}
 
-	private List<BeaconEvent> removeOutliersEvents(List<BeaconEvent> events) {
-		List<Short> rssis = extractRssis(events);
-		removeOutliers(rssis);
+		@Override
+		public boolean hasNext() {
+			while (next == null && !finished) {
+				next = localization(current);
 
-		List<BeaconEvent> normal = new ArrayList<>();
-		int size = events.size();
-		for (int i = 0; i < size; i++) {
-			if (rssis.get(i) != null)
-				normal.add(events.get(i));
+				current += publicationRate;
+				finished = current >= finish;
+			}
+			return next != null;
 		}
 
-		return normal;
+		@Override
+		public Point next() {
+			if (!hasNext())
+				throw new NoSuchElementException();
+			Point result = next;
+			next = null;
+			return result;
+		}
 	}
 
-	private static List<Short> extractRssis(List<BeaconEvent> events) {
-		return events.stream()
-				.map(BeaconEvent::getBeacon)
-				.map(BluetoothLeBeacon::getRssi)
-				.map(v -> (short) v.intValue())
-				.collect(Collectors.toList());
+	// Position of the last beacon located
+	protected Point computeLocation(long start, long end) {
+		LocationBatch result = computeLocations(start, end, batch);
+		return (result.isEmpty()) ? null : result.getPoint(result.size() - 1);
 	}
 
-	private void removeOutliers(List<Short> total) {
-		List<Short> partition = total.stream().filter(Objects::nonNull).collect(Collectors.toList());
+	// Installation -> Beacon -> Position
+	protected LocationBatch computeLocations(long start, long end, LocationBatch result) {
+
+		// Installation -> Beacon -> Scanner -> Range of events
+		EventWindow events = installationService.getEventWindow(start, end, window);
+		step++;
+
+		// Shared state, prepared before locating the beacons concurrently
+		if (incremental) {
+			weights(end - start);
+			if (entryWindows.length < events.getEntries())
+				entryWindows = new SlidingWindow[events.getEntries()];
+			for (int entry = 0; entry < events.getEntries(); entry++)
+				entryWindows[entry] = slidingWindows.computeIfAbsent(events.getSeries(entry),
+						it -> new SlidingWindow());
+		}
 
-		int size = total.size();
-		int partitionSize = partition.size();
-		int outliers = size - partitionSize;
+		// Detections by installations and beacons
+		int groups = events.getGroups();
+		result.reset(groups);
+		IntStream beacons = IntStream.range(0, groups);
+		if (groups >= PARALLEL_BEACONS)
+			beacons = beacons.parallel();
+		beacons.forEach(group -> {
+
+			// Beacon position in installation
+			Point p = position(events, group);
+			if (p != null)
+				result.set(group, events.getInstallation(group), events.getBeacon(group), p.getX(), p.getY());
+		});
+		result.compact();
+		if (incremental)
+			Arrays.fill(entryWindows, 0, events.getEntries(), null);
 
-		if (outliers < size) {
-			double[] limits = computeLimits(partition, cutoffRate);
-			total.replaceAll(v -> (inRange(v, limits)) ? v : null);
+		// Forget the series and the beacons that left the window
+		if (incremental)
+			slidingWindows.values().removeIf(it -> it.getStep() != step);
+		positioningService.evictFixes();
 
-			if (total.stream().filter(Objects::isNull).count() > outliers)
-				removeOutliers(total);
-		}
-	}
+		// Evict the events out of the retention time (and of this window)
+		if (retentionTime > 0)
+			installationService.evictEvents(Math.min(end + delay * 1000l - retentionTime * 1000l, start));
 
-	private static double[] computeLimits(List<Short> values, double cutoffRate) {
-		double arithmeticAverage = arithmeticAverage(values);
-		double typicalDeviation = typicalDeviation(values, arithmeticAverage);
-		double factor = typicalDeviation * cutoffRate;
-		return new double[] { arithmeticAverage - factor, arithmeticAverage + factor };
+		return result;
 	}
 
-	private static double arithmeticAverage(List<Short> values) {
-		return averageSum(values, Short::shortValue);
-	}
+	protected Point position(EventWindow events, int group) {
+		ScannerResumes resumes = RESUMES.get();
+		resumes.clear();
+		for (int entry = events.getFirstEntry(group); entry < events.getEndEntry(group); entry++) {
+			String scanner = events.getScanner(entry);
+			if (incremental) {
+				// A series is in several entries if its scanner is in several installations
+				synchronized (entryWindows[entry]) {
+					resumeBeaconEvents(scanner, slidingWindow(events, entry), events.getStart(), events.getEnd(),
+							resumes);
+				}
+			} else {
+				resumeBeaconEvents(scanner, events.getSnapshot(entry), events.getFrom(entry), events.getTo(entry),
+						events.getStart(), events.getEnd(), resumes);
+			}
+		}
 
-	private static double averageSum(List<Short> values, ToDoubleFunction<Short> f) {
-		return sum(values, f) / (double) values.size();
+		return positioningService.position(events.getInstallation(group), events.getBeacon(group), resumes);
 	}
 
-	private static double sum(List<Short> values, ToDoubleFunction<Short> f) {
-		return values.stream().mapToDouble(f::applyAsDouble).sum();
+	/**
+	 * Adds to 'result' the resume of the events [from, to) of 'scanner', if any
+	 * is valid
+	 *
+	 * @return Whether a resume was added
+	 */
+	protected boolean resumeBeaconEvents(String scanner, EventSnapshot events, int from, int to, long start,
+			long end, ScannerResumes result) {
+		OutlierFilter rssis = OUTLIER_FILTERS.get();
+		rssis.load(events, from, to);
+
+		if (!rssis.filter(cutoffRate))
+			return false;
+		int first = rssis.firstValid();
+		int rssi = aggregateRssis(events, from, rssis, start, end);
+		result.add(scanner, events.getTime(from + first), rssi, events.getTxpower(from + first));
+		return true;
 	}
 
-	private static double typicalDeviation(List<Short> values, double arithmeticAverage) {
-		return Math.sqrt(averageSum(values, v -> Math.pow(v - arithmeticAverage, 2)));
+	protected SlidingWindow slidingWindow(EventWindow events, int entry) {
+		SlidingWindow result = entryWindows[entry];
+		if (result.getStep() != step) {
+			result.moveTo(events.getSnapshot(entry), events.getFrom(entry), events.getTo(entry));
+			result.setStep(step);
+		}
+		return result;
 	}
 
-	private static boolean inRange(Short v, double[] limits) {
-		return v != null && v >= limits[0] && v <= limits[1];
+	/**
+	 * Adds to 'result' the resume of the events of 'scanner' in 'window', if any
+	 * is valid
+	 *
+	 * @return Whether a resume was added
+	 */
+	protected boolean resumeBeaconEvents(String scanner, SlidingWindow window, long start, long end,
+			ScannerResumes result) {
+		if (!window.isSupported())
+			return resumeBeaconEvents(scanner, window.getSnapshot(), window.getFrom(), window.getTo(), start, end,
+					result);
+
+		if (!window.filter(cutoffRate))
+			return false;
+		EventSnapshot events = window.getSnapshot();
+		int first = window.firstValid();
+		int rssi = window.aggregate(start, end, attenuation, weights(end - start));
+		result.add(scanner, events.getTime(first), rssi, events.getTxpower(first));
+		return true;
 	}
 
-	private int aggregateRssis(List<BeaconEvent> events, long start, long end) {
-		List<Double> weights = computeWeights(events, start, end);
-		List<Short> rssis = extractRssis(events);
-		return (int) IntStream.range(0, rssis.size())
-				.mapToDouble(i -> weights.get(i) * rssis.get(i))
-				.sum();
+	// Weights by 'end - time' of a window of 'length' ms
+	private double[] weights(long length) {
+		if (length > Integer.MAX_VALUE - 1)
+			return null;
+		if (weights == null || weights.length != length + 1) {
+			weights = new double[(int) length + 1];
+			for (int i = 0; i <= length; i++)
+				weights[i] = weight(length - i, 0, length);
+		}
+		return weights;
 	}
 
-	private List<Double> computeWeights(List<BeaconEvent> events, long start, long end) {
-		double window = end - start;
-		List<Double> weights = events.stream()
-				.map(BeaconEvent::getTime)
-				.map(t -> end - t)
-				.map(delay -> 1d - (((double) delay) / window))
-				.map(w -> Math.pow(w, attenuation))
-				.collect(Collectors.toList());
-		normalize(weights);
-		return weights;
+	// Weighted average of the valid rssis, with the weights normalized first.
+	// Sums are the ones of the streams (compensated), so the results are the
+	// same as with the events as objects
+	private int aggregateRssis(EventSnapshot events, int from, OutlierFilter rssis, long start, long end) {
+		int size = rssis.size();
+		double[] weights = WEIGHTS.get();
+		if (weights.length < size) {
+			weights = new double[Math.max(size, weights.length * 2)];
+			WEIGHTS.set(weights);
+		}
+		int valid = 0;
+		for (int i = 0; i < size; i++)
+			if (rssis.isValid(i))
+				weights[valid++] = weight(events.getTime(from + i), start, end);
+
+		double total = Arrays.stream(weights, 0, valid).sum();
+		valid = 0;
+		for (int i = 0; i < size; i++)
+			if (rssis.isValid(i)) {
+				weights[valid] = weights[valid] / total * rssis.get(i);
+				valid++;
+			}
+		return (int) Arrays.stream(weights, 0, valid).sum();
 	}
 
-	protected static void normalize(List<Double> values) {
-		double sum = values.stream().mapToDouble(Double::doubleValue).sum();
-		values.replaceAll(v -> v / sum);
+	private double weight(long time, long start, long end) {
+		double window = end - start;
+		double delay = end - time;
+		return Math.pow(1d - (delay / window), attenuation);
 	}
 }
@@ -0,0 +1,136 @@
+package iot.challenge.mide.location.accuracy.simulation.services;
+
+import java.util.Arrays;
+
+/**
+ * Outlier filter of the rssis of a range of an {@link EventSnapshot}. Keeps the
+ * values within 'cutoffRate' typical deviations of the average, again and
+ * again until no value is discarded.
+ *
+ * The values are copied to a primitive buffer and the discarded ones are marked
+ * in a bitmask. The sum and the sum of squares of the valid values are updated
+ * as values are discarded, so each pass only visits the values once. The
+ * buffers grow to the largest range loaded: a filter can be reused for every
+ * scanner and window without allocating memory.
+ */
+public class OutlierFilter {
+
+	// Values whose n * squares fits a long (|rssi| <= 2^15)
+	static final int EXACT = 1 << 16;
+
+	private short[] values;
+	private long[] discarded;
+	private int size;
+
+	// Valid values: count, sum and sum of squares
+	private int valid;
+	private long sum;
+	private long squares;
+
+	public OutlierFilter() {
+		super();
+		values = new short[0];
+		discarded = new long[0];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of values not discarded
+	 */
+	public int getValid() {
+		return valid;
+	}
+
+	public short get(int index) {
+		return values[index];
+	}
+
+	public boolean isValid(int index) {
+		return (discarded[index >>> 6] & (1L << index)) == 0;
+	}
+
+	/**
+	 * Loads the rssis of the range [from, to) of 'snapshot', all of them valid
+	 *
+	 * @param snapshot
+	 *            Events
+	 * @param from
+	 *            First index
+	 * @param to
+	 *            Index after the last one
+	 */
+	public void load(EventSnapshot snapshot, int from, int to) {
+		size = to - from;
+		if (values.length < size) {
+			values = new short[size];
+			discarded = new long[(size + 63) >>> 6];
+		}
+		Arrays.fill(discarded, 0, (size + 63) >>> 6, 0L);
+
+		sum = 0;
+		squares = 0;
+		for (int i = 0; i < size; i++) {
+			short rssi = snapshot.getRssi(from + i);
+			values[i] = rssi;
+			sum += rssi;
+			squares += rssi * rssi;
+		}
+		valid = size;
+	}
+
+	/**
+	 * Discards the outliers
+	 *
+	 * @param cutoffRate
+	 *            Typical deviations from the average accepted
+	 * @return False if every value is discarded
+	 */
+	public boolean filter(double cutoffRate) {
+		while (valid > 0) {
+			double average = sum / (double) valid;
+			double factor = typicalDeviation(valid, sum, squares) * cutoffRate;
+			double lower = average - factor;
+			double upper = average + factor;
+
+			int before = valid;
+			for (int i = 0; i < size; i++) {
+				short rssi = values[i];
+				if ((rssi < lower || rssi > upper) && isValid(i)) {
+					discarded[i >>> 6] |= 1L << i;
+					valid--;
+					sum -= rssi;
+					squares -= rssi * rssi;
+				}
+			}
+			if (valid == before)
+				break;
+		}
+		return valid > 0;
+	}
+
+	/**
+	 * Returns the index of the first valid value (size if there is none)
+	 */
+	public int firstValid() {
+		int i = 0;
+		while (i < size && !isValid(i))
+			i++;
+		return i;
+	}
+
+	/**
+	 * Returns the typical deviation of 'n' rssis given their sum and sum of
+	 * squares. Up to {@value #EXACT} values, the variance is computed with
+	 * integers, so it's exact
+	 */
+	static double typicalDeviation(long n, long sum, long squares) {
+		if (n > EXACT) {
+			double average = sum / (double) n;
+			return Math.sqrt(Math.max(squares / (double) n - average * average, 0d));
+		}
+		return Math.sqrt((n * squares - sum * sum) / ((double) n * n));
+	}
+}
@@ -1,67 +1,246 @@
 package iot.challenge.mide.location.accuracy.simulation.services;
 
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
-import iot.challenge.mide.location.accuracy.installation.Installation;
 import iot.challenge.mide.location.accuracy.installation.Point;
-import iot.challenge.mide.location.accuracy.installation.Scanner;
 import iot.challenge.mide.location.accuracy.simulation.BeaconEvent;
 import iot.challenge.mide.location.accuracy.trilaterization.DistanceAlgorithm;
 import iot.challenge.mide.location.accuracy.trilaterization.DistanceUnits;
 import iot.challenge.mide.location.accuracy.trilaterization.LeastSquaresAlgorithm;
+import iot.challenge.mide.location.accuracy.trilaterization.TrackingLeastSquaresSolver;
+import iot.challenge.mide.location.accuracy.trilaterization.TrilaterationFunction;
 
 /**
- * PositioningService
+ * PositioningService. Positions computed with
+ * {@link LeastSquaresAlgorithm#Tracking} are solved by the tracking solver of
+ * the service and start from the previous position of the beacon in the
+ * installation (when it's known). Only finite positions are kept, and the
+ * positions of the beacons that leave the scanning window are forgotten
+ * ({@link #evictFixes()})
+ *
+ * The positions and distances of each computation are written to buffers
+ * reused by the thread (one set per number of scanners), so different beacons
+ * can be positioned concurrently. The distances are computed from the columns
+ * of the {@link ScannerResumes}
  */
 public class PositioningService {
 
 	private static final int MIN_SCANNERS = 4;
 
+	// Indexed by number of scanners
+	private static final ThreadLocal<Workspace[]> WORKSPACES = ThreadLocal.withInitial(() -> new Workspace[16]);
+
 	private DistanceAlgorithm distanceAlgorithm;
 	private LeastSquaresAlgorithm leastSquaresAlgorithm;
 
 	private InstallationService installationService;
 
+	private TrackingLeastSquaresSolver trackingSolver;
+	// Installation -> Beacon -> Last position
+	private Map<String, Map<String, Fix>> fixes;
+	// Publication in progress, to find the fixes of the beacons that left
+	private long publication;
+	private AtomicLong iterations;
+	private AtomicLong solutions;
+
 	private PositioningService() {
 		super();
-		installationService = InstallationService.getInstance();
+		trackingSolver = new TrackingLeastSquaresSolver();
+		fixes = new ConcurrentHashMap<>();
+		iterations = new AtomicLong();
+		solutions = new AtomicLong();
 	}
 
 	public PositioningService(DistanceAlgorithm distanceAlgorithm, LeastSquaresAlgorithm leastSquaresAlgorithm) {
+		this(InstallationService.getInstance(), distanceAlgorithm, leastSquaresAlgorithm);
+	}
+
+	public PositioningService(InstallationService installationService, DistanceAlgorithm distanceAlgorithm,
+			LeastSquaresAlgorithm leastSquaresAlgorithm) {
 		this();
+		this.installationService = installationService;
 		this.distanceAlgorithm = distanceAlgorithm;
 		this.leastSquaresAlgorithm = leastSquaresAlgorithm;
 	}
 
+	public void setTrackingSolver(TrackingLeastSquaresSolver trackingSolver) {
+		this.trackingSolver = trackingSolver;
+	}
+
+	/**
+	 * Returns the iterations used by the positions computed with
+	 * {@link LeastSquaresAlgorithm#Tracking}
+	 */
+	public long getIterations() {
+		return iterations.get();
+	}
+
+	/**
+	 * Returns the number of positions computed with
+	 * {@link LeastSquaresAlgorithm#Tracking}
+	 */
+	public long getSolutions() {
+		return solutions.get();
+	}
+
 	public Point position(String installationId, List<String> scannersAddr, List<BeaconEvent> events) {
-		if (scannersAddr.size() < MIN_SCANNERS)
-			return null;
+		return position(installationId, null, scannersAddr, events);
+	}
+
+	public Point position(String installationId, String beacon, List<String> scannersAddr,
+			List<BeaconEvent> events) {
+		ScannerResumes resumes = new ScannerResumes();
+		for (int i = 0; i < scannersAddr.size(); i++) {
+			BeaconEvent event = events.get(i);
+			resumes.add(scannersAddr.get(i), event.getTime(), event.getBeacon().getRssi(),
+					event.getBeacon().getTxpower());
+		}
+		return position(installationId, beacon, resumes);
+	}
+
+	/**
+	 * Computes the position of 'beacon' in 'installationId' from the resumes of
+	 * the scanners that detected it
+	 *
+	 * @param installationId
+	 *            Installation id
+	 * @param beacon
+	 *            Beacon (null to compute it regardless of its previous position)
+	 * @param resumes
+	 *            Resume of each scanner
+	 * @return Position, null if too few scanners detected the beacon or a
+	 *         scanner is no longer in the installation
+	 */
+	public Point position(String installationId, String beacon, ScannerResumes resumes) {
+		if (resumes.size() < MIN_SCANNERS)
+			return notPositioned(installationId, beacon);
 
-		return leastSquaresAlgorithm.computePosition(
-				obtainPositions(
-						installationService.getInstallation(installationId),
-						scannersAddr),
-				obtainDistances(events));
+		Workspace workspace = workspace(resumes.size());
+		double[][] positions = workspace.positions;
+		double[] distances = workspace.distances;
+		// A scanner is unknown if the installation changed after the window was read
+		if (!obtainPositions(installationService.getIndex(), installationId, resumes, positions))
+			return notPositioned(installationId, beacon);
+		obtainDistances(resumes, distances);
+
+		if (leastSquaresAlgorithm != LeastSquaresAlgorithm.Tracking) {
+			leastSquaresAlgorithm.computePosition(workspace.function.set(positions, distances), workspace.result);
+			return new Point((int) workspace.result[0], (int) workspace.result[1]);
+		}
+
+		double[] result = workspace.result;
+		if (beacon == null) {
+			iterations.addAndGet(trackingSolver.solve(positions, distances, null, result));
+			solutions.incrementAndGet();
+			return new Point((int) result[0], (int) result[1]);
+		}
+
+		// Each beacon is positioned by one thread at a time
+		Map<String, Fix> beacons = fixes.computeIfAbsent(installationId, it -> new ConcurrentHashMap<>());
+		Fix fix = beacons.get(beacon);
+		iterations.addAndGet(trackingSolver.solve(positions, distances, (fix == null) ? null : fix.position, result));
+		solutions.incrementAndGet();
+		// A non-finite position would be the seed of every later one
+		if (Double.isFinite(result[0]) && Double.isFinite(result[1])) {
+			if (fix == null) {
+				fix = new Fix();
+				beacons.put(beacon, fix);
+			}
+			fix.position[0] = result[0];
+			fix.position[1] = result[1];
+			fix.publication = publication;
+		}
+		return new Point((int) result[0], (int) result[1]);
+	}
+
+	private static Workspace workspace(int scanners) {
+		Workspace[] workspaces = WORKSPACES.get();
+		if (scanners >= workspaces.length) {
+			workspaces = Arrays.copyOf(workspaces, Math.max(scanners + 1, workspaces.length * 2));
+			WORKSPACES.set(workspaces);
+		}
+		Workspace result = workspaces[scanners];
+		if (result == null)
+			result = workspaces[scanners] = new Workspace(scanners);
+		return result;
+	}
+
+	/**
+	 * Marks the last position of 'beacon' as still in use, although the beacon
+	 * can't be positioned
+	 *
+	 * @return Null
+	 */
+	private Point notPositioned(String installationId, String beacon) {
+		if (leastSquaresAlgorithm == LeastSquaresAlgorithm.Tracking && beacon != null) {
+			Map<String, Fix> beacons = fixes.get(installationId);
+			Fix fix = (beacons == null) ? null : beacons.get(beacon);
+			if (fix != null)
+				fix.publication = publication;
+		}
+		return null;
 	}
 
-	protected static double[][] obtainPositions(Installation installation, List<String> scannersAddr) {
-		return scannersAddr.stream()
-				.map(it -> findScannerByAddr(installation.getScanners(), it))
-				.map(Scanner::getPosition)
-				.map(point -> new double[] { point.getX(), point.getY() })
-				.toArray(double[][]::new);
+	/**
+	 * Forgets the last positions of the beacons not in the publication just
+	 * computed (neither positioned nor detected), and starts the next one. It
+	 * must not run while positions are computed
+	 */
+	public void evictFixes() {
+		long current = publication;
+		fixes.values().forEach(beacons -> beacons.values().removeIf(it -> it.publication != current));
+		fixes.values().removeIf(Map::isEmpty);
+		publication++;
 	}
 
-	protected static Scanner findScannerByAddr(List<Scanner> scanners, String addr) {
-		return scanners.stream()
-				.filter(scanner -> addr.equals(scanner.getAddr()))
-				.findFirst()
-				.orElse(null);
+	/**
+	 * Writes to 'positions' the position of each scanner of 'resumes'
+	 *
+	 * @return False if a scanner is not in the installation (any more)
+	 */
+	protected static boolean obtainPositions(InstallationIndex index, String installationId, ScannerResumes resumes,
+			double[][] positions) {
+		for (int i = 0; i < positions.length; i++) {
+			int scanner = index.getScanner(installationId, resumes.getScanner(i));
+			if (scanner < 0)
+				return false;
+			positions[i][0] = index.getX(scanner);
+			positions[i][1] = index.getY(scanner);
+		}
+		return true;
 	}
 
-	protected double[] obtainDistances(List<BeaconEvent> events) {
-		return events.stream()
-				.mapToDouble(event -> distanceAlgorithm.computeDistance(event, DistanceUnits.MILIMETERS))
-				.toArray();
+	protected void obtainDistances(ScannerResumes resumes, double[] distances) {
+		distanceAlgorithm.computeDistances(resumes.getRssis(), resumes.getTxpowers(), distances,
+				DistanceUnits.MILIMETERS);
+	}
+
+	// Last position of a beacon, and the publication that used it
+	private static class Fix {
+
+		private final double[] position = new double[2];
+		private long publication;
+	}
+
+	/**
+	 * Buffers of the computations with a number of scanners
+	 */
+	private static class Workspace {
+
+		private final double[][] positions;
+		private final double[] distances;
+		private final TrilaterationFunction function;
+		private final double[] result;
+
+		private Workspace(int scanners) {
+			positions = new double[scanners][2];
+			distances = new double[scanners];
+			function = new TrilaterationFunction();
+			result = new double[2];
+		}
 	}
 }
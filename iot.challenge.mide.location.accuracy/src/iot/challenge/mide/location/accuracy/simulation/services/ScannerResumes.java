@@ -0,0 +1,103 @@
+package iot.challenge.mide.location.accuracy.simulation.services;
+
+import java.util.Arrays;
+
+/**
+ * Resumes of the events of a beacon in a window, one per scanner that detected
+ * it: the time and txpower of the first valid event and the aggregated rssi.
+ * They are kept in primitive columns, as the events of an {@link EventSeries},
+ * so the distances are computed from the columns directly.
+ *
+ * Instances are meant to be reused: resuming a window allocates nothing once
+ * the columns have grown enough.
+ */
+public class ScannerResumes {
+
+	private String[] scanners;
+	private long[] times;
+	private short[] rssis;
+	private byte[] txpowers;
+	private int size;
+
+	public ScannerResumes() {
+		super();
+		scanners = new String[8];
+		times = new long[8];
+		rssis = new short[8];
+		txpowers = new byte[8];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public String getScanner(int index) {
+		return scanners[index];
+	}
+
+	public long getTime(int index) {
+		return times[index];
+	}
+
+	public int getRssi(int index) {
+		return rssis[index];
+	}
+
+	public int getTxpower(int index) {
+		return txpowers[index];
+	}
+
+	/**
+	 * Returns the rssi column: the rssis of the resumes, in its first
+	 * {@link #size()} elements. It's reused, so it's valid until the next change
+	 */
+	public short[] getRssis() {
+		return rssis;
+	}
+
+	/**
+	 * Returns the txpower column, as {@link #getRssis()}
+	 */
+	public byte[] getTxpowers() {
+		return txpowers;
+	}
+
+	/**
+	 * Adds the resume of 'scanner'
+	 *
+	 * @param scanner
+	 *            Scanner address
+	 * @param time
+	 *            Time of the first valid event
+	 * @param rssi
+	 *            Aggregated rssi
+	 * @param txpower
+	 *            Txpower of the first valid event
+	 * @throws IllegalArgumentException
+	 *             If the rssi or the txpower don't fit in their columns
+	 */
+	public void add(String scanner, long time, int rssi, int txpower) {
+		EventSeries.check(rssi, txpower);
+		if (size == scanners.length) {
+			int length = size * 2;
+			scanners = Arrays.copyOf(scanners, length);
+			times = Arrays.copyOf(times, length);
+			rssis = Arrays.copyOf(rssis, length);
+			txpowers = Arrays.copyOf(txpowers, length);
+		}
+		scanners[size] = scanner;
+		times[size] = time;
+		rssis[size] = (short) rssi;
+		txpowers[size] = (byte) txpower;
+		size++;
+	}
+
+	public void clear() {
+		Arrays.fill(scanners, 0, size, null);
+		size = 0;
+	}
+}
@@ -0,0 +1,252 @@
+package iot.challenge.mide.location.accuracy.simulation.services;
+
+import java.util.Arrays;
+
+/**
+ * State of a range [from, to) of an {@link EventSeries} that slides forward,
+ * read from the snapshots of the series.
+ * Moving the window only adds the entering events and removes the leaving ones
+ * from a histogram of the rssi values, so the outlier filter works on the
+ * histogram instead of the events.
+ *
+ * The outlier filter is the one of {@link OutlierFilter}: the values kept are
+ * always an interval of the histogram. The weights of the aggregation
+ * depend on the window end, so the valid events are visited once, with the
+ * arithmetic of the batch aggregation of {@link LocationService}: both modes
+ * give the same rssis.
+ *
+ * The window is rebuilt from scratch when it moves backwards, jumps past its
+ * end, the series is modified out of order or its leaving events were
+ * evicted.
+ */
+public class SlidingWindow {
+
+	private static final int OFFSET = -Byte.MIN_VALUE;
+	private static final int BUCKETS = 256;
+
+	// Weights of the valid events, then their products by the rssis
+	private static final ThreadLocal<double[]> PRODUCTS = ThreadLocal.withInitial(() -> new double[64]);
+
+	private EventSnapshot snapshot;
+	private int modifications;
+	private int from;
+	private int to;
+
+	private final int[] counts;
+	private int size;
+	private int unbucketed;
+
+	// Result of the outlier filter: valid values [low, high] (buckets)
+	private int low;
+	private int high;
+	private int valid;
+
+	// Publication of the LocationService that moved the window last
+	private long step;
+
+	public SlidingWindow() {
+		super();
+		counts = new int[BUCKETS];
+	}
+
+	/**
+	 * Returns the snapshot the window was moved to
+	 */
+	public EventSnapshot getSnapshot() {
+		return snapshot;
+	}
+
+	public int getFrom() {
+		return from;
+	}
+
+	public int getTo() {
+		return to;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the publication the window was last moved for
+	 */
+	public long getStep() {
+		return step;
+	}
+
+	public void setStep(long step) {
+		this.step = step;
+	}
+
+	/**
+	 * Returns false if some rssi of the window doesn't fit the histogram (outside
+	 * the byte range)
+	 */
+	public boolean isSupported() {
+		return unbucketed == 0;
+	}
+
+	/**
+	 * Moves the window to the range [from, to) of 'snapshot'. Every snapshot of
+	 * a window must be of the same series
+	 *
+	 * @param snapshot
+	 *            Snapshot of the series
+	 * @param from
+	 *            First index
+	 * @param to
+	 *            Index after the last one
+	 */
+	public void moveTo(EventSnapshot snapshot, int from, int to) {
+		if (this.snapshot == null || snapshot.getModifications() != modifications
+				|| from < this.from || to < this.to || from >= this.to || this.from < snapshot.getFirst()) {
+			reset(snapshot);
+			this.from = from;
+			this.to = from;
+		}
+
+		// Events of the previous snapshots are the same in this one
+		this.snapshot = snapshot;
+
+		// Entering events
+		for (int i = this.to; i < to; i++)
+			update(i, 1);
+		// Leaving events
+		for (int i = this.from; i < from; i++)
+			update(i, -1);
+
+		this.from = from;
+		this.to = to;
+	}
+
+	private void reset(EventSnapshot snapshot) {
+		this.modifications = snapshot.getModifications();
+		Arrays.fill(counts, 0);
+		size = 0;
+		unbucketed = 0;
+	}
+
+	private void update(int index, int sign) {
+		int bucket = snapshot.getRssi(index) + OFFSET;
+		if (bucket < 0 || bucket >= BUCKETS)
+			unbucketed += sign;
+		else
+			counts[bucket] += sign;
+		size += sign;
+	}
+
+	/**
+	 * Discards the outliers of the window
+	 *
+	 * @param cutoffRate
+	 *            Typical deviations from the average accepted
+	 * @return False if every value is discarded
+	 */
+	public boolean filter(double cutoffRate) {
+		int l = 0;
+		while (l < BUCKETS && counts[l] == 0)
+			l++;
+		int h = BUCKETS - 1;
+		while (h >= l && counts[h] == 0)
+			h--;
+		int n = size;
+
+		while (n > 0) {
+			long sum = 0;
+			long squares = 0;
+			for (int b = l; b <= h; b++) {
+				long value = b - OFFSET;
+				sum += counts[b] * value;
+				squares += counts[b] * value * value;
+			}
+			double average = sum / (double) n;
+			double factor = OutlierFilter.typicalDeviation(n, sum, squares) * cutoffRate;
+			double lower = average - factor;
+			double upper = average + factor;
+
+			int nl = l;
+			while (nl <= h && (counts[nl] == 0 || nl - OFFSET < lower))
+				nl++;
+			int nh = h;
+			while (nh >= nl && (counts[nh] == 0 || nh - OFFSET > upper))
+				nh--;
+			int m = 0;
+			for (int b = nl; b <= nh; b++)
+				m += counts[b];
+
+			l = nl;
+			h = nh;
+			if (m == n)
+				break;
+			n = m;
+		}
+
+		low = l;
+		high = h;
+		valid = n;
+		return n > 0;
+	}
+
+	/**
+	 * Returns the index of the first valid event (after {@link #filter(double)})
+	 */
+	public int firstValid() {
+		int i = from;
+		while (i < to && !isValid(snapshot.getRssi(i)))
+			i++;
+		return i;
+	}
+
+	private boolean isValid(int rssi) {
+		int bucket = rssi + OFFSET;
+		return bucket >= low && bucket <= high;
+	}
+
+	/**
+	 * Returns the weighted average of the valid rssis (after
+	 * {@link #filter(double)}). The weight of an event at 'time' is
+	 * (1 - (end - time) / (end - start)) ^ attenuation. The weights are
+	 * normalized first and summed as streams do (compensated), as the batch
+	 * aggregation does
+	 *
+	 * @param start
+	 *            Window start
+	 * @param end
+	 *            Window end
+	 * @param attenuation
+	 *            Attenuation
+	 * @param weights
+	 *            Weights by 'end - time' (null to compute them)
+	 * @return Average
+	 */
+	public int aggregate(long start, long end, double attenuation, double[] weights) {
+		double[] products = PRODUCTS.get();
+		if (products.length < valid) {
+			products = new double[Math.max(valid, products.length * 2)];
+			PRODUCTS.set(products);
+		}
+
+		double window = end - start;
+		int n = 0;
+		for (int i = from; i < to; i++) {
+			if (isValid(snapshot.getRssi(i))) {
+				long delay = end - snapshot.getTime(i);
+				products[n++] = (weights != null && delay < weights.length)
+						? weights[(int) delay]
+						: Math.pow(1d - (delay / window), attenuation);
+			}
+		}
+
+		double total = Arrays.stream(products, 0, n).sum();
+		n = 0;
+		for (int i = from; i < to; i++) {
+			int rssi = snapshot.getRssi(i);
+			if (isValid(rssi)) {
+				products[n] = products[n] / total * rssi;
+				n++;
+			}
+		}
+		return (int) Arrays.stream(products, 0, n).sum();
+	}
+}
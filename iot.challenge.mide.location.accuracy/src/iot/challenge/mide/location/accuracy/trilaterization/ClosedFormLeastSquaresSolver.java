@@ -0,0 +1,72 @@
+package iot.challenge.mide.location.accuracy.trilaterization;
+
+/**
+ * Solves the linearized trilateration problem of {@link LinearLeastSquaresSolver}
+ * in two dimensions: the normal equations are accumulated in scalars and the
+ * 2x2 system is solved directly, without allocating memory.
+ *
+ * As in {@link LinearLeastSquaresSolver}, the position and distance of index 0
+ * are the reference; if the system is singular (e.g. collinear positions) the
+ * result is the reference position.
+ */
+public class ClosedFormLeastSquaresSolver {
+
+	// Relative determinant below which the system is considered singular
+	private static final double SINGULAR = 1E-12;
+
+	private ClosedFormLeastSquaresSolver() {
+		super();
+	}
+
+	/**
+	 * Computes the position whose distances to 'positions' best fit 'distances'
+	 *
+	 * @param positions
+	 *            Known positions (x, y)
+	 * @param distances
+	 *            Distances to the known positions
+	 * @param result
+	 *            Receives the position (x, y)
+	 */
+	public static void solve(double[][] positions, double[] distances, double[] result) {
+		int n = positions.length;
+		if (n < 2)
+			throw new IllegalArgumentException("Need at least two positions.");
+		if (n != distances.length)
+			throw new IllegalArgumentException("The number of positions you provided, " + n
+					+ ", does not match the number of distances, " + distances.length + ".");
+		if (positions[0].length != 2)
+			throw new IllegalArgumentException("Only two-dimensional positions are supported.");
+
+		double x0 = positions[0][0];
+		double y0 = positions[0][1];
+		double r0 = TrilaterationFunction.bound(distances[0]);
+
+		// Rows (dx, dy) and right side b of the linear system, accumulated as
+		// A'A = [sxx sxy; sxy syy] and A'b = [sxb syb]
+		double sxx = 0, sxy = 0, syy = 0, sxb = 0, syb = 0;
+		for (int i = 1; i < n; i++) {
+			double[] position = positions[i];
+			if (position.length != 2)
+				throw new IllegalArgumentException("The dimension of all positions should be the same.");
+			double dx = position[0] - x0;
+			double dy = position[1] - y0;
+			double ri = TrilaterationFunction.bound(distances[i]);
+			double b = 0.5 * (r0 * r0 - ri * ri + dx * dx + dy * dy);
+			sxx += dx * dx;
+			sxy += dx * dy;
+			syy += dy * dy;
+			sxb += dx * b;
+			syb += dy * b;
+		}
+
+		double determinant = sxx * syy - sxy * sxy;
+		if (determinant <= SINGULAR * sxx * syy) {
+			result[0] = x0;
+			result[1] = y0;
+		} else {
+			result[0] = x0 + (syy * sxb - sxy * syb) / determinant;
+			result[1] = y0 + (sxx * syb - sxy * sxb) / determinant;
+		}
+	}
+}
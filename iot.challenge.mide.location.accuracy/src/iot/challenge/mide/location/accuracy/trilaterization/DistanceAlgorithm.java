@@ -1,10 +1,17 @@
 package iot.challenge.mide.location.accuracy.trilaterization;
 
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
 import iot.challenge.mide.location.accuracy.simulation.BeaconEvent;
 import iot.challenge.mide.location.accuracy.simulation.BluetoothLeBeacon;
 
 /**
  * Algorithm used to compute BLE beacon distance
+ *
+ * Rssi and txpower are small integers, so the distances are looked up in
+ * tables: a row of distances by rssi for each txpower, built the first time
+ * the txpower is used. Values outside the byte range are computed directly.
+ * The tables hold the values of the formulas, so the results are the same
  */
 public enum DistanceAlgorithm {
 	Linear("Linear") {
@@ -31,10 +38,17 @@ public enum DistanceAlgorithm {
 		}
 	};
 
+	private static final int OFFSET = -Byte.MIN_VALUE;
+	private static final int VALUES = 256;
+
 	private String name;
 
+	// Txpower -> Rssi -> Distance (meters)
+	private final AtomicReferenceArray<double[]> table;
+
 	private DistanceAlgorithm(String name) {
 		this.name = name;
+		this.table = new AtomicReferenceArray<>(VALUES);
 	}
 
 	public String getName() {
@@ -43,7 +57,78 @@ public enum DistanceAlgorithm {
 
 	public double computeDistance(BeaconEvent event) {
 		BluetoothLeBeacon beacon = event.getBeacon();
-		return distance(beacon.getRssi(), beacon.getTxpower());
+		return computeDistance(beacon.getRssi(), beacon.getTxpower());
+	}
+
+	/**
+	 * Returns the distance (meters) of a beacon detected with 'rssi' that
+	 * advertises 'txpower'
+	 */
+	public double computeDistance(int rssi, int txpower) {
+		int r = rssi + OFFSET;
+		int t = txpower + OFFSET;
+		if ((r | t) < 0 || r >= VALUES || t >= VALUES)
+			return distance(rssi, txpower);
+		return row(t)[r];
+	}
+
+	/**
+	 * Computes the distances (meters) of a batch of detections
+	 *
+	 * @param rssi
+	 *            Rssi of each detection
+	 * @param txpower
+	 *            Txpower of each detection
+	 * @param out
+	 *            Receives the distance of each detection
+	 */
+	public void computeDistances(short[] rssi, byte[] txpower, double[] out) {
+		computeDistances(rssi, txpower, out, DistanceUnits.METERS);
+	}
+
+	/**
+	 * Computes the distances of a batch of detections in 'units'
+	 *
+	 * @param rssi
+	 *            Rssi of each detection
+	 * @param txpower
+	 *            Txpower of each detection
+	 * @param out
+	 *            Receives the distance of each detection
+	 * @param units
+	 *            Units of the distances
+	 */
+	public void computeDistances(short[] rssi, byte[] txpower, double[] out, DistanceUnits units) {
+		int n = out.length;
+		if (rssi.length < n || txpower.length < n)
+			throw new IllegalArgumentException("Fewer detections than distances: " + n);
+
+		double scale = DistanceUnits.convert(1d, DistanceUnits.METERS, units);
+		int last = Integer.MIN_VALUE;
+		double[] row = null;
+		for (int i = 0; i < n; i++) {
+			int r = rssi[i] + OFFSET;
+			if (txpower[i] != last) {
+				last = txpower[i];
+				row = row(last + OFFSET);
+			}
+			double distance = (r < 0 || r >= VALUES) ? distance(rssi[i], txpower[i]) : row[r];
+			out[i] = distance * scale;
+		}
+	}
+
+	// Distances by rssi of a txpower, built on first use. Threads racing to build
+	// a row compute the same values; one of them is kept
+	private double[] row(int txpower) {
+		double[] result = table.get(txpower);
+		if (result == null) {
+			result = new double[VALUES];
+			for (int r = 0; r < VALUES; r++)
+				result[r] = distance(r - OFFSET, txpower - OFFSET);
+			if (!table.compareAndSet(txpower, null, result))
+				result = table.get(txpower);
+		}
+		return result;
 	}
 
 	public double computeDistance(BeaconEvent event, DistanceUnits units) {
@@ -2,6 +2,7 @@ package iot.challenge.mide.location.accuracy.trilaterization;
 
 import org.apache.commons.math3.fitting.leastsquares.LeastSquaresOptimizer.Optimum;
 import org.apache.commons.math3.fitting.leastsquares.LevenbergMarquardtOptimizer;
+import org.apache.commons.math3.linear.ArrayRealVector;
 import org.apache.commons.math3.linear.RealVector;
 
 import iot.challenge.mide.location.accuracy.installation.Point;
@@ -22,8 +23,62 @@ public enum LeastSquaresAlgorithm {
 			Optimum optimum = solver.solve();
 			return optimum.getPoint();
 		}
+	},
+	/**
+	 * Same linearization as {@link #Linear}, solved in closed form for two
+	 * dimensions ({@link ClosedFormLeastSquaresSolver})
+	 */
+	ClosedForm("ClosedForm") {
+		@Override
+		public void computePosition(double[][] positions, double[] distances, double[] result) {
+			ClosedFormLeastSquaresSolver.solve(positions, distances, result);
+		}
+
+		@Override
+		public void computePosition(TrilaterationFunction function, double[] result) {
+			ClosedFormLeastSquaresSolver.solve(function.getPositions(), function.getDistances(), result);
+		}
+
+		@Override
+		protected RealVector solve(TrilaterationFunction function) {
+			double[] result = new double[2];
+			computePosition(function, result);
+			return new ArrayRealVector(result, false);
+		}
+	},
+	/**
+	 * Same problem as {@link #NonLinear}, solved for two dimensions by
+	 * {@link TrackingLeastSquaresSolver}. Used alone it starts from the centroid,
+	 * as {@link #NonLinear}; {@link #computePosition(double[][], double[], double[], double[])}
+	 * starts from a seed. The solver has the default configuration: a configured
+	 * one is used through the PositioningService
+	 */
+	Tracking("Tracking") {
+		@Override
+		public void computePosition(double[][] positions, double[] distances, double[] result) {
+			computePosition(positions, distances, null, result);
+		}
+
+		@Override
+		public int computePosition(double[][] positions, double[] distances, double[] seed, double[] result) {
+			return TRACKING.solve(positions, distances, seed, result);
+		}
+
+		@Override
+		public void computePosition(TrilaterationFunction function, double[] result) {
+			TRACKING.solve(function.getPositions(), function.getDistances(), null, result);
+		}
+
+		@Override
+		protected RealVector solve(TrilaterationFunction function) {
+			double[] result = new double[2];
+			computePosition(function, result);
+			return new ArrayRealVector(result, false);
+		}
 	};
 
+	private static final TrackingLeastSquaresSolver TRACKING = new TrackingLeastSquaresSolver();
+
 	private String name;
 
 	private LeastSquaresAlgorithm(String name) {
@@ -37,11 +92,59 @@ public enum LeastSquaresAlgorithm {
 	// Points uses integer coordinates -> loss of precision
 	// For minimum loss it's recommended to use mm. instead of m.
 	public Point computePosition(double[][] positions, double[] distances) {
-		TrilaterationFunction trilaterationFunction = new TrilaterationFunction(positions, distances);
-		RealVector vector = solve(trilaterationFunction);
-		double[] coordinates = vector.toArray();
+		double[] coordinates = new double[positions[0].length];
+		computePosition(positions, distances, coordinates);
 		return new Point((int) coordinates[0], (int) coordinates[1]);
 	}
 
+	/**
+	 * Computes the position whose distances to 'positions' best fit 'distances'
+	 *
+	 * @param positions
+	 *            Known positions
+	 * @param distances
+	 *            Distances to the known positions
+	 * @param result
+	 *            Receives the coordinates of the position
+	 */
+	public void computePosition(double[][] positions, double[] distances, double[] result) {
+		computePosition(new TrilaterationFunction(positions, distances), result);
+	}
+
+	/**
+	 * Computes the position that best fits 'function', which can be a reused
+	 * workspace ({@link TrilaterationFunction#set(double[][], double[])})
+	 *
+	 * @param function
+	 *            Trilateration problem
+	 * @param result
+	 *            Receives the coordinates of the position
+	 */
+	public void computePosition(TrilaterationFunction function, double[] result) {
+		RealVector vector = solve(function);
+		for (int i = 0; i < result.length; i++)
+			result[i] = vector.getEntry(i);
+	}
+
+	/**
+	 * Computes the position whose distances to 'positions' best fit 'distances',
+	 * starting from 'seed' (e.g. the previous position of a tracked beacon). Only
+	 * iterative algorithms that can be seeded use it
+	 *
+	 * @param positions
+	 *            Known positions
+	 * @param distances
+	 *            Distances to the known positions
+	 * @param seed
+	 *            Starting position, null if unknown
+	 * @param result
+	 *            Receives the coordinates of the position
+	 * @return Iterations used (0 if the algorithm is not iterative)
+	 */
+	public int computePosition(double[][] positions, double[] distances, double[] seed, double[] result) {
+		computePosition(positions, distances, result);
+		return 0;
+	}
+
 	abstract protected RealVector solve(TrilaterationFunction function);
 }
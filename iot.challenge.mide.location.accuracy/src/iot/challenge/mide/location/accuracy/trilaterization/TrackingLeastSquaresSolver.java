@@ -0,0 +1,191 @@
+package iot.challenge.mide.location.accuracy.trilaterization;
+
+import java.util.Properties;
+
+/**
+ * Solves the trilateration problem of {@link NonLinearLeastSquaresSolver} (the
+ * same weighted residuals) in two dimensions, starting from a seed. Tracked
+ * beacons move little between fixes, so seeding with the previous fix
+ * converges in a few iterations.
+ *
+ * The residuals of inconsistent distances are large, which makes Gauss-Newton
+ * converge slowly. The second derivatives of the residuals are constant (2I),
+ * so the exact Hessian is used instead, damped as in Levenberg-Marquardt.
+ *
+ * The solver keeps no state between calls: it can be shared by threads.
+ */
+public class TrackingLeastSquaresSolver {
+
+	public static final String MAX_ITERATIONS = "tracking.max.iterations";
+	public static final String STEP_TOLERANCE = "tracking.step.tolerance";
+	public static final String COST_TOLERANCE = "tracking.cost.tolerance";
+
+	public static final int DEFAULT_MAX_ITERATIONS = 100;
+	// Positions are computed in mm. and truncated to integers
+	public static final double DEFAULT_STEP_TOLERANCE = 1.0;
+	public static final double DEFAULT_COST_TOLERANCE = 1E-10;
+
+	private static final double INITIAL_DAMPING = 1E-3;
+	private static final double MAX_DAMPING = 1E12;
+	private static final double MIN_DAMPING = 1E-12;
+
+	private final int maxIterations;
+	private final double stepTolerance;
+	private final double costTolerance;
+
+	public TrackingLeastSquaresSolver() {
+		this(DEFAULT_MAX_ITERATIONS, DEFAULT_STEP_TOLERANCE, DEFAULT_COST_TOLERANCE);
+	}
+
+	/**
+	 * @param maxIterations
+	 *            Maximum number of iterations
+	 * @param stepTolerance
+	 *            Converged when a step is shorter (units of the positions)
+	 * @param costTolerance
+	 *            Converged when the cost decreases less (relative)
+	 */
+	public TrackingLeastSquaresSolver(int maxIterations, double stepTolerance, double costTolerance) {
+		if (maxIterations < 1 || stepTolerance < 0 || costTolerance < 0)
+			throw new IllegalArgumentException("Invalid tracking configuration");
+		this.maxIterations = maxIterations;
+		this.stepTolerance = stepTolerance;
+		this.costTolerance = costTolerance;
+	}
+
+	/**
+	 * Returns a solver configured with the keys of 'properties' (the defaults for
+	 * the absent keys)
+	 */
+	public static TrackingLeastSquaresSolver fromProperties(Properties properties) {
+		return new TrackingLeastSquaresSolver(
+				Integer.parseInt(properties.getProperty(MAX_ITERATIONS, Integer.toString(DEFAULT_MAX_ITERATIONS))),
+				Double.parseDouble(properties.getProperty(STEP_TOLERANCE, Double.toString(DEFAULT_STEP_TOLERANCE))),
+				Double.parseDouble(properties.getProperty(COST_TOLERANCE, Double.toString(DEFAULT_COST_TOLERANCE))));
+	}
+
+	public int getMaxIterations() {
+		return maxIterations;
+	}
+
+	public double getStepTolerance() {
+		return stepTolerance;
+	}
+
+	public double getCostTolerance() {
+		return costTolerance;
+	}
+
+	/**
+	 * Computes the position whose distances to 'positions' best fit 'distances'
+	 *
+	 * @param positions
+	 *            Known positions (x, y)
+	 * @param distances
+	 *            Distances to the known positions
+	 * @param seed
+	 *            Starting position (x, y), null to start from the centroid of
+	 *            'positions'
+	 * @param result
+	 *            Receives the position (x, y)
+	 * @return Iterations used
+	 */
+	public int solve(double[][] positions, double[] distances, double[] seed, double[] result) {
+		int n = positions.length;
+		if (n < 2)
+			throw new IllegalArgumentException("Need at least two positions.");
+		if (n != distances.length)
+			throw new IllegalArgumentException("The number of positions you provided, " + n
+					+ ", does not match the number of distances, " + distances.length + ".");
+
+		double x = 0;
+		double y = 0;
+		for (double[] position : positions) {
+			if (position.length != 2)
+				throw new IllegalArgumentException("Only two-dimensional positions are supported.");
+			x += position[0];
+			y += position[1];
+		}
+		x /= n;
+		y /= n;
+		if (seed != null) {
+			x = seed[0];
+			y = seed[1];
+		}
+
+		double damping = INITIAL_DAMPING;
+		double cost = cost(positions, distances, x, y);
+		int iterations = 0;
+		while (iterations < maxIterations) {
+			iterations++;
+
+			// Hessian H = J'WJ + 2 sum(w f) I and gradient g = J'Wf
+			double hxx = 0, hxy = 0, hyy = 0, gx = 0, gy = 0, wf = 0;
+			for (int i = 0; i < n; i++) {
+				double r = TrilaterationFunction.bound(distances[i]);
+				double w = r * r;
+				double dx = x - positions[i][0];
+				double dy = y - positions[i][1];
+				double f = dx * dx + dy * dy - w;
+				double jx = 2 * dx;
+				double jy = 2 * dy;
+				hxx += w * jx * jx;
+				hxy += w * jx * jy;
+				hyy += w * jy * jy;
+				gx += w * jx * f;
+				gy += w * jy * f;
+				wf += w * f;
+			}
+			double scale = (hxx + hyy) / 2;
+			hxx += 2 * wf;
+			hyy += 2 * wf;
+
+			// Damped steps until one decreases the cost
+			boolean accepted = false;
+			double stepX = 0;
+			double stepY = 0;
+			double next = cost;
+			while (!accepted && damping <= MAX_DAMPING) {
+				double axx = hxx + damping * scale;
+				double ayy = hyy + damping * scale;
+				double determinant = axx * ayy - hxy * hxy;
+				if (axx > 0 && determinant > 0) {
+					stepX = -(ayy * gx - hxy * gy) / determinant;
+					stepY = -(axx * gy - hxy * gx) / determinant;
+					next = cost(positions, distances, x + stepX, y + stepY);
+					accepted = next < cost;
+				}
+				if (accepted)
+					damping = Math.max(damping / 10, MIN_DAMPING);
+				else
+					damping *= 10;
+			}
+			if (!accepted)
+				break;
+
+			x += stepX;
+			y += stepY;
+			double decrease = (cost - next) / cost;
+			cost = next;
+			if (cost == 0 || decrease <= costTolerance
+					|| Math.sqrt(stepX * stepX + stepY * stepY) <= stepTolerance)
+				break;
+		}
+
+		result[0] = x;
+		result[1] = y;
+		return iterations;
+	}
+
+	private static double cost(double[][] positions, double[] distances, double x, double y) {
+		double cost = 0;
+		for (int i = 0; i < positions.length; i++) {
+			double r = TrilaterationFunction.bound(distances[i]);
+			double dx = x - positions[i][0];
+			double dy = y - positions[i][1];
+			double f = dx * dx + dy * dy - r * r;
+			cost += r * r * f * f;
+		}
+		return cost;
+	}
+}
@@ -18,17 +18,55 @@ public class TrilaterationFunction implements MultivariateJacobianFunction {
 
 	protected static final double epsilon = 1E-7;
 
+	// Distance bounded to the strictly positive domain, as the ones of the
+	// function are
+	static double bound(double distance) {
+		return Math.max(distance, epsilon);
+	}
+
 	/**
 	 * Known positions of static nodes
 	 */
-	protected final double positions[][];
+	protected double positions[][];
 
 	/**
-	 * Euclidean distances from static nodes to mobile node
+	 * Euclidean distances from static nodes to mobile node (bounded copy of the
+	 * given distances)
 	 */
-	protected final double distances[];
+	protected double distances[];
+
+	// Evaluation buffers, reused while the number of positions doesn't change
+	private double[] residuals;
+	private double[][] jacobian;
+	private RealVector residualVector;
+	private RealMatrix jacobianMatrix;
+	private Pair<RealVector, RealMatrix> evaluation;
+
+	/**
+	 * Creates an empty function, to be set with
+	 * {@link #set(double[][], double[])} (e.g. a reusable workspace)
+	 */
+	public TrilaterationFunction() {
+		super();
+	}
 
 	public TrilaterationFunction(double positions[][], double distances[]) {
+		this();
+		set(positions, distances);
+	}
+
+	/**
+	 * Sets the problem to solve. The buffers of the previous problem are reused
+	 * if it had the same number of positions and dimension. 'distances' isn't
+	 * modified
+	 *
+	 * @param positions
+	 *            Known positions
+	 * @param distances
+	 *            Distances to the known positions
+	 * @return This function
+	 */
+	public TrilaterationFunction set(double positions[][], double distances[]) {
 
 		if (positions.length < 2) {
 			throw new IllegalArgumentException("Need at least two positions.");
@@ -39,11 +77,6 @@ public class TrilaterationFunction implements MultivariateJacobianFunction {
 					+ ", does not match the number of distances, " + distances.length + ".");
 		}
 
-		// bound distances to strictly positive domain
-		for (int i = 0; i < distances.length; i++) {
-			distances[i] = Math.max(distances[i], epsilon);
-		}
-
 		int positionDimension = positions[0].length;
 		for (int i = 1; i < positions.length; i++) {
 			if (positionDimension != positions[i].length) {
@@ -51,8 +84,23 @@ public class TrilaterationFunction implements MultivariateJacobianFunction {
 			}
 		}
 
+		if (this.distances == null || this.distances.length != distances.length
+				|| jacobian[0].length != positionDimension) {
+			this.distances = new double[distances.length];
+			residuals = new double[distances.length];
+			jacobian = new double[distances.length][positionDimension];
+			residualVector = new ArrayRealVector(residuals, false);
+			jacobianMatrix = new Array2DRowRealMatrix(jacobian, false);
+			evaluation = new Pair<RealVector, RealMatrix>(residualVector, jacobianMatrix);
+		}
+
+		// bound distances to strictly positive domain
+		for (int i = 0; i < distances.length; i++) {
+			this.distances[i] = Math.max(distances[i], epsilon);
+		}
+
 		this.positions = positions;
-		this.distances = distances;
+		return this;
 	}
 
 	public final double[] getDistances() {
@@ -70,44 +118,45 @@ public class TrilaterationFunction implements MultivariateJacobianFunction {
 	 * ri^2]/delta_[x0] at J[i][1] = delta_[(x0-xi)^2 + (y0-yi)^2 - ri^2]/delta_[y0]
 	 * partial derivative with respect to the parameters passed to value() method
 	 *
+	 * The matrix is reused: it's valid until the next evaluation
+	 *
 	 * @param point
 	 *            for which to calculate the slope
 	 * @return Jacobian matrix for point
 	 */
 	public RealMatrix jacobian(RealVector point) {
-		double[] pointArray = point.toArray();
-
-		double[][] jacobian = new double[distances.length][pointArray.length];
+		int dimension = point.getDimension();
 		for (int i = 0; i < jacobian.length; i++) {
-			for (int j = 0; j < pointArray.length; j++) {
-				jacobian[i][j] = 2 * pointArray[j] - 2 * positions[i][j];
+			for (int j = 0; j < dimension; j++) {
+				jacobian[i][j] = 2 * point.getEntry(j) - 2 * positions[i][j];
 			}
 		}
 
-		return new Array2DRowRealMatrix(jacobian);
+		return jacobianMatrix;
 	}
 
+	/**
+	 * The values and the Jacobian are reused: they are valid until the next
+	 * evaluation
+	 */
 	@Override
 	public Pair<RealVector, RealMatrix> value(RealVector point) {
 
 		// input
-		double[] pointArray = point.toArray();
-
-		// output
-		double[] resultPoint = new double[this.distances.length];
+		int dimension = point.getDimension();
 
 		// compute least squares
-		for (int i = 0; i < resultPoint.length; i++) {
-			resultPoint[i] = 0.0;
+		for (int i = 0; i < residuals.length; i++) {
+			residuals[i] = 0.0;
 			// calculate sum, add to overall
-			for (int j = 0; j < pointArray.length; j++) {
-				resultPoint[i] += (pointArray[j] - this.getPositions()[i][j])
-						* (pointArray[j] - this.getPositions()[i][j]);
+			for (int j = 0; j < dimension; j++) {
+				double delta = point.getEntry(j) - positions[i][j];
+				residuals[i] += delta * delta;
 			}
-			resultPoint[i] -= (this.getDistances()[i]) * (this.getDistances()[i]);
+			residuals[i] -= distances[i] * distances[i];
 		}
 
-		RealMatrix jacobian = jacobian(point);
-		return new Pair<RealVector, RealMatrix>(new ArrayRealVector(resultPoint), jacobian);
+		jacobian(point);
+		return evaluation;
 	}
 }
@@ -0,0 +1,194 @@
+package iot.challenge.mide.location.accuracy.live;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import iot.challenge.mide.location.accuracy.installation.Installation;
+import iot.challenge.mide.location.accuracy.installation.Point;
+import iot.challenge.mide.location.accuracy.installation.Scanner;
+import iot.challenge.mide.location.accuracy.simulation.BeaconEvent;
+import iot.challenge.mide.location.accuracy.simulation.BluetoothLeBeacon;
+import iot.challenge.mide.location.accuracy.simulation.services.InstallationService;
+import iot.challenge.mide.location.accuracy.simulation.services.LocationService;
+import iot.challenge.mide.location.accuracy.simulation.services.PositioningService;
+import iot.challenge.mide.location.accuracy.trilaterization.DistanceAlgorithm;
+import iot.challenge.mide.location.accuracy.trilaterization.LeastSquaresAlgorithm;
+
+public class LiveLocationEngineTest {
+
+	private static final String INSTALLATION = "site";
+	private static final String BEACON = "beacon";
+	private static final Point POINT = new Point(3000, 4000);
+	private static final int TXPOWER = -59;
+	private static final long START = 1000000L;
+	private static final int WINDOW = 10000;
+
+	private Installation installation;
+	private InProcessBroker broker;
+	private LiveLocationEngine engine;
+	private long now;
+	private List<String> topics;
+	private List<String> payloads;
+
+	@Before
+	public void setUp() {
+		installation = new Installation(INSTALLATION);
+		for (int i = 0; i < 4; i++)
+			installation.addScanner(new Scanner(scannerAddr(i),
+					new Point((i % 2) * 10000, (i / 2) * 10000)));
+
+		broker = new InProcessBroker();
+		engine = createEngine(new Properties());
+		topics = Collections.synchronizedList(new ArrayList<>());
+		payloads = Collections.synchronizedList(new ArrayList<>());
+		broker.addListener((topic, payload, qos, retained) -> {
+			if (topic.startsWith(LiveLocationEngine.DEFAULT_LOCATION_TOPIC + "/")) {
+				topics.add(topic);
+				payloads.add(new String(payload));
+			}
+		});
+		broker.subscribe(LiveLocationEngine.DEFAULT_LOCATION_TOPIC + "/#", 0);
+		engine.start();
+	}
+
+	@After
+	public void tearDown() {
+		engine.stop();
+	}
+
+	private LiveLocationEngine createEngine(Properties engineProperties) {
+		InstallationService installationService = new InstallationService();
+		installationService.addInstallation(installation);
+		LocationService locationService = createLocationService(installationService);
+		return new LiveLocationEngine(broker, installationService, locationService, engineProperties, () -> now);
+	}
+
+	private static LocationService createLocationService(InstallationService installationService) {
+		Properties properties = new Properties();
+		properties.setProperty(LocationService.RETENTION_TIME, "0");
+		// No scheduled publication during a test: they are published by hand
+		properties.setProperty(LocationService.PUBLICATION_RATE, "3600000");
+		properties.setProperty(LocationService.DELAY, "0");
+		properties.setProperty(LocationService.SCANNING_WINDOW, Integer.toString(WINDOW));
+		properties.setProperty(LocationService.ATTENUATION, "0.5");
+		properties.setProperty(LocationService.CUTOFF_RATE, "0.9");
+		PositioningService positioningService = new PositioningService(installationService,
+				DistanceAlgorithm.Linear, LeastSquaresAlgorithm.NonLinear);
+		return new LocationService(installationService, positioningService, properties);
+	}
+
+	private static String scannerAddr(int index) {
+		return String.format("00:00:00:00:00:%02X", index);
+	}
+
+	// Log-distance path loss with the exponent of the Linear distance algorithm
+	private static int rssi(double distance) {
+		return (int) Math.round(TXPOWER - 20 * Math.log10(distance / 1000d));
+	}
+
+	// A message per scanner with its detections of the beacon at POINT
+	private List<List<BeaconEvent>> detections() {
+		List<List<BeaconEvent>> result = new ArrayList<>();
+		for (Scanner scanner : installation.getScanners()) {
+			double distance = Math.hypot(POINT.getX() - scanner.getPosition().getX(),
+					POINT.getY() - scanner.getPosition().getY());
+			List<BeaconEvent> events = new ArrayList<>();
+			for (long time = START; time < START + WINDOW; time += 500)
+				events.add(new BeaconEvent(
+						new BluetoothLeBeacon(rssi(distance), TXPOWER), time));
+			result.add(events);
+		}
+		return result;
+	}
+
+	private void publishDetections(List<List<BeaconEvent>> detections) {
+		for (int i = 0; i < detections.size(); i++)
+			broker.publish(LiveLocationEngine.DEFAULT_SCANNER_TOPIC + "/" + installation.getScanners().get(i).getAddr()
+					+ "/" + BEACON, BeaconEvent.toByteArray(detections.get(i)), 0, false, 5);
+	}
+
+	@Test
+	public void publishesTheLocationOfEachBeacon() {
+		List<List<BeaconEvent>> detections = detections();
+		publishDetections(detections);
+		now = START + WINDOW;
+		engine.publish();
+
+		// The same events located without the engine
+		InstallationService installationService = new InstallationService();
+		installationService.addInstallation(installation);
+		for (int i = 0; i < detections.size(); i++)
+			installationService.saveEvents(installation.getScanners().get(i).getAddr(), BEACON, detections.get(i));
+		Point expected = createLocationService(installationService).localization(now);
+
+		assertNotNull(expected);
+		assertEquals(Collections.singletonList(
+				LiveLocationEngine.DEFAULT_LOCATION_TOPIC + "/" + INSTALLATION + "/" + BEACON), topics);
+		assertEquals(Collections.singletonList(expected.toString()), payloads);
+		Point published = Point.fromString(payloads.get(0));
+		assertTrue(Math.hypot(published.getX() - POINT.getX(), published.getY() - POINT.getY()) < 500);
+
+		assertEquals(detections.size(), engine.getMessages());
+		assertEquals(1, engine.getPublications());
+		assertEquals(1, engine.getFixes());
+		assertEquals(detections.size(), engine.getLatency().getCount());
+	}
+
+	@Test
+	public void ignoresMalformedMessages() {
+		broker.publish(LiveLocationEngine.DEFAULT_SCANNER_TOPIC + "/" + scannerAddr(0) + "/"
+				+ BEACON, "not json".getBytes(), 0, false, 5);
+		now = START + WINDOW;
+		engine.publish();
+
+		assertEquals(1, engine.getMalformed());
+		assertEquals(0, engine.getMessages());
+		assertTrue(topics.isEmpty());
+	}
+
+	@Test
+	public void skipsMessagesWithEventsOutOfRange() {
+		List<BeaconEvent> events = new ArrayList<>();
+		events.add(new BeaconEvent(new BluetoothLeBeacon(-70, TXPOWER), START));
+		events.add(new BeaconEvent(new BluetoothLeBeacon(-70, 200), START + 500));
+		broker.publish(LiveLocationEngine.DEFAULT_SCANNER_TOPIC + "/" + scannerAddr(0) + "/" + BEACON,
+				BeaconEvent.toByteArray(events), 0, false, 5);
+		now = START + WINDOW;
+		engine.publish();
+
+		assertEquals(1, engine.getMalformed());
+		assertEquals(0, engine.getMessages());
+		assertTrue(topics.isEmpty());
+	}
+
+	@Test
+	public void expiresMessagesNoPublicationCovers() {
+		engine.stop();
+		Properties properties = new Properties();
+		properties.setProperty(LiveLocationEngine.PENDING_TIMEOUT, "0");
+		engine = createEngine(properties);
+		engine.start();
+
+		// A scanner whose clock runs a day ahead
+		long future = START + 24 * 3600 * 1000L;
+		broker.publish(LiveLocationEngine.DEFAULT_SCANNER_TOPIC + "/" + scannerAddr(0) + "/"
+				+ BEACON, BeaconEvent.toByteArray(Collections.singletonList(
+						new BeaconEvent(new BluetoothLeBeacon(-70, TXPOWER), future))), 0, false, 5);
+		now = START + WINDOW;
+		engine.publish();
+
+		assertEquals(1, engine.getMessages());
+		assertEquals(1, engine.getExpired());
+		assertEquals(0, engine.getLatency().getCount());
+	}
+}
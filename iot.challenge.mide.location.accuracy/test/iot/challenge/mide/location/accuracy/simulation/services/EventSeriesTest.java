@@ -0,0 +1,96 @@
+package iot.challenge.mide.location.accuracy.simulation.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class EventSeriesTest {
+
+	private static final int CHUNKS = 3;
+	private static final int EVENTS = CHUNKS * EventSeries.CHUNK_SIZE;
+	private static final int TXPOWER = -59;
+
+	// Events at the even times 0, 2, 4... with the rssi of their time
+	private static EventSeries createSeries() {
+		EventSeries result = new EventSeries();
+		for (int i = 0; i < EVENTS; i++)
+			result.add(2L * i, rssi(2L * i), TXPOWER);
+		return result;
+	}
+
+	private static int rssi(long time) {
+		return -(int) (time % 100) - 1;
+	}
+
+	private static void assertEvents(EventSnapshot snapshot, int first, int size) {
+		assertEquals(first, snapshot.getFirst());
+		assertEquals(size, snapshot.size());
+		assertEquals(first + size, snapshot.getEnd());
+		for (int i = first; i < first + size; i++) {
+			assertEquals(2L * i, snapshot.getTime(i));
+			assertEquals(rssi(2L * i), snapshot.getRssi(i));
+			assertEquals(TXPOWER, snapshot.getTxpower(i));
+		}
+	}
+
+	// Inserts in every chunk, replacements, appends and the eviction of the
+	// head chunk: the snapshot taken before reads the same events
+	@Test
+	public void snapshotsDontChangeWhenTheSeriesDoes() {
+		EventSeries series = createSeries();
+		EventSnapshot snapshot = series.snapshot();
+
+		for (int c = 0; c < CHUNKS; c++)
+			series.add(2L * c * EventSeries.CHUNK_SIZE + 1, -1, TXPOWER);
+		series.add(0, -2, TXPOWER);
+		series.add(2L * EVENTS, -3, TXPOWER);
+		assertEquals(EventSeries.CHUNK_SIZE, series.evict(2L * EventSeries.CHUNK_SIZE));
+
+		assertNotSame(snapshot, series.snapshot());
+		assertEvents(snapshot, 0, EVENTS);
+		assertEquals(0, snapshot.getModifications());
+		assertEquals(CHUNKS + 1, series.getModifications());
+	}
+
+	@Test
+	public void indexesDontChangeWhenEventsAreEvicted() {
+		EventSeries series = createSeries();
+		int index = series.lowerBound(2L * EventSeries.CHUNK_SIZE + 10);
+
+		// Only the whole chunks before the time
+		assertEquals(0, series.evict(2L * EventSeries.CHUNK_SIZE - 2));
+		assertEquals(EventSeries.CHUNK_SIZE, series.evict(2L * EventSeries.CHUNK_SIZE + 10));
+		assertEvents(series.snapshot(), EventSeries.CHUNK_SIZE, EVENTS - EventSeries.CHUNK_SIZE);
+		assertEquals(index, series.lowerBound(2L * EventSeries.CHUNK_SIZE + 10));
+		assertEquals(2L * EventSeries.CHUNK_SIZE + 10, series.getTime(index));
+		assertEquals(series.getFirst(), series.lowerBound(0));
+		assertEquals(series.getEnd(), series.upperBound(Long.MAX_VALUE));
+
+		// Appends and inserts after an eviction are at the logical indexes
+		series.add(2L * EVENTS, rssi(2L * EVENTS), TXPOWER);
+		assertEquals(EVENTS, series.getEnd() - 1);
+		series.add(index * 2L + 1, -1, TXPOWER);
+		assertEquals(index + 1, series.lowerBound(index * 2L + 1));
+		assertEquals(EventSeries.CHUNK_SIZE, series.getFirst());
+		assertEquals(EVENTS + 2, series.getEnd());
+
+		// Every event, the indexes go on from the end
+		assertEquals(2 * EventSeries.CHUNK_SIZE + 2, series.evict(Long.MAX_VALUE));
+		assertEquals(EVENTS + 2, series.getFirst());
+		assertEquals(EVENTS + 2, series.getEnd());
+		series.add(0, -1, TXPOWER);
+		assertEquals(EVENTS + 2, series.lowerBound(0));
+		assertEquals(0, series.getTime(EVENTS + 2));
+	}
+
+	@Test
+	public void publishesASnapshotOnlyWhenEventsChange() {
+		EventSeries series = createSeries();
+		EventSnapshot snapshot = series.snapshot();
+		series.publish();
+		assertEquals(0, series.evict(0));
+		assertSame(snapshot, series.snapshot());
+	}
+}
@@ -0,0 +1,161 @@
+package iot.challenge.mide.location.accuracy.simulation.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+public class EventStoreTest {
+
+	private static final int WRITERS = 4;
+	private static final int BEACONS = 3;
+	private static final int SCANNERS = 2;
+	private static final int EVENTS = 5 * EventSeries.CHUNK_SIZE;
+
+	private static final int RSSI = -70;
+	private static final int TXPOWER = -59;
+
+	// Every writer saves in every series, interleaving its times with the
+	// others', so the series take out-of-order inserts too. The evictor empties
+	// the store meanwhile: every event saved is evicted once, or is still there
+	@Test
+	public void concurrentWritersAndEvictionLoseNoEvents() throws InterruptedException {
+		EventStore store = new EventStore();
+		AtomicBoolean retiredWrite = new AtomicBoolean();
+		AtomicBoolean writing = new AtomicBoolean(true);
+		CountDownLatch ready = new CountDownLatch(WRITERS + 1);
+		List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+
+		List<Thread> writers = new ArrayList<>();
+		for (int w = 0; w < WRITERS; w++) {
+			int writer = w;
+			writers.add(new Thread(() -> {
+				ready.countDown();
+				try {
+					ready.await();
+					for (int i = 0; i < EVENTS; i++) {
+						// Descending in the first half, so most of it is out of order
+						long time = (long) ((i < EVENTS / 2) ? EVENTS / 2 - 1 - i : i) * WRITERS + writer;
+						String beacon = "beacon" + (i % BEACONS);
+						String scanner = "scanner" + (i % SCANNERS);
+						store.write(beacon, scanner, series -> {
+							if (series.isRetired())
+								retiredWrite.set(true);
+							series.put(time, RSSI, TXPOWER);
+						});
+					}
+				} catch (Throwable e) {
+					errors.add(e);
+				}
+			}));
+		}
+		long[] evicted = new long[1];
+		Thread evictor = new Thread(() -> {
+			ready.countDown();
+			try {
+				ready.await();
+				while (writing.get())
+					evicted[0] += store.evict(Long.MAX_VALUE);
+			} catch (Throwable e) {
+				errors.add(e);
+			}
+		});
+
+		writers.forEach(Thread::start);
+		evictor.start();
+		for (Thread writer : writers)
+			writer.join();
+		writing.set(false);
+		evictor.join();
+
+		assertEquals(Collections.emptyList(), errors);
+		assertFalse(retiredWrite.get());
+		long retained = 0;
+		for (Map<String, EventSeries> scanners : store.getBeacons().values())
+			for (EventSeries series : scanners.values()) {
+				assertFalse(series.isRetired());
+				assertSorted(series.snapshot());
+				retained += series.size();
+			}
+		assertEquals((long) WRITERS * EVENTS, evicted[0] + retained);
+
+		assertEquals(retained, store.evict(Long.MAX_VALUE));
+		assertTrue(store.getBeacons().isEmpty());
+	}
+
+	@Test
+	public void writesAfterARemovalGoToANewSeries() {
+		EventStore store = new EventStore();
+		store.add("beacon", "scanner", 1, RSSI, TXPOWER);
+		EventSeries removed = store.getSeries("beacon", "scanner");
+		store.remove("beacon");
+		assertTrue(removed.isRetired());
+
+		store.add("beacon", "scanner", 2, RSSI, TXPOWER);
+		EventSeries series = store.getSeries("beacon", "scanner");
+		assertNotSame(removed, series);
+		assertEquals(1, removed.size());
+		assertEquals(1, series.size());
+		assertEquals(2, series.getTime(series.getFirst()));
+	}
+
+	@Test
+	public void writesAfterAnEvictionGoToANewSeries() {
+		EventStore store = new EventStore();
+		store.add("beacon", "scanner", 1, RSSI, TXPOWER);
+		EventSeries evicted = store.getSeries("beacon", "scanner");
+		assertEquals(1, store.evict(2));
+		assertTrue(evicted.isRetired());
+		assertTrue(store.getBeacons().isEmpty());
+
+		store.add("beacon", "scanner", 3, RSSI, TXPOWER);
+		EventSeries series = store.getSeries("beacon", "scanner");
+		assertNotSame(evicted, series);
+		assertTrue(evicted.isEmpty());
+		assertEquals(1, series.size());
+	}
+
+	// Out-of-order times across chunks, each one saved twice (the second
+	// replaces the first)
+	@Test
+	public void keepsTheEventsSortedAfterOutOfOrderInserts() {
+		EventStore store = new EventStore();
+		int events = 3 * EventSeries.CHUNK_SIZE;
+		for (int copy = 0; copy < 2; copy++)
+			for (int i = 0; i < events; i++) {
+				long time = (i * 7919L) % events;
+				store.add("beacon", "scanner", time, RSSI - copy, TXPOWER);
+			}
+
+		EventSeries series = store.getSeries("beacon", "scanner");
+		EventSnapshot snapshot = series.snapshot();
+		assertEquals(events, snapshot.size());
+		assertSorted(snapshot);
+		for (int i = snapshot.getFirst(); i < snapshot.getEnd(); i++) {
+			assertEquals(i, snapshot.getTime(i));
+			assertEquals(RSSI - 1, snapshot.getRssi(i));
+		}
+		// The second time every event replaced one
+		assertTrue(snapshot.getModifications() >= events);
+
+		assertEquals(EventSeries.CHUNK_SIZE, store.evict(EventSeries.CHUNK_SIZE));
+		snapshot = series.snapshot();
+		assertEquals(events - EventSeries.CHUNK_SIZE, snapshot.size());
+		assertEquals(EventSeries.CHUNK_SIZE, snapshot.getTime(snapshot.getFirst()));
+		assertSorted(snapshot);
+	}
+
+	private static void assertSorted(EventSnapshot snapshot) {
+		for (int i = snapshot.getFirst() + 1; i < snapshot.getEnd(); i++)
+			assertTrue("Unsorted at " + i, snapshot.getTime(i - 1) < snapshot.getTime(i));
+	}
+}
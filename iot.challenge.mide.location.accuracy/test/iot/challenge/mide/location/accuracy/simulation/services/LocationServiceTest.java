@@ -0,0 +1,100 @@
+package iot.challenge.mide.location.accuracy.simulation.services;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Properties;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LocationServiceTest {
+
+	private static final String SCANNER = "scanner";
+	private static final int WINDOW = 10000;
+	private static final int RATE = 1000;
+	private static final int TXPOWER = -59;
+
+	private static LocationService createLocationService(double attenuation, boolean incremental) {
+		Properties properties = new Properties();
+		properties.setProperty(LocationService.RETENTION_TIME, "0");
+		properties.setProperty(LocationService.PUBLICATION_RATE, Integer.toString(RATE));
+		properties.setProperty(LocationService.DELAY, "0");
+		properties.setProperty(LocationService.SCANNING_WINDOW, Integer.toString(WINDOW));
+		properties.setProperty(LocationService.ATTENUATION, Double.toString(attenuation));
+		properties.setProperty(LocationService.CUTOFF_RATE, "0.9");
+		properties.setProperty(LocationService.INCREMENTAL, Boolean.toString(incremental));
+		return new LocationService(new InstallationService(), null, properties);
+	}
+
+	// Detections every 50 to 400 ms: noisy ones with outliers, then runs of a
+	// single value (e.g. -100, whose normalized weights don't add up exactly)
+	private static EventSeries createSeries(long duration) {
+		Random random = new Random(7);
+		EventSeries result = new EventSeries();
+		long time = 0;
+		while (time < duration) {
+			int rssi;
+			if ((time / WINDOW) % 2 == 0)
+				rssi = (random.nextInt(10) == 0) ? -40 - random.nextInt(60) : -75 + (int) (random.nextGaussian() * 3);
+			else
+				rssi = -100 + (int) (time / WINDOW / 2) % 3;
+			result.add(time, rssi, TXPOWER);
+			time += 50 + random.nextInt(351);
+		}
+		return result;
+	}
+
+	// The windows of consecutive publications, resumed by both modes
+	@Test
+	public void incrementalResumesAreTheBatchOnes() {
+		long duration = 30L * WINDOW;
+		EventSnapshot snapshot = createSeries(duration).snapshot();
+		for (double attenuation : new double[] { 0, 0.5, 1, 2 }) {
+			LocationService batch = createLocationService(attenuation, false);
+			LocationService incremental = createLocationService(attenuation, true);
+			SlidingWindow window = new SlidingWindow();
+			ScannerResumes expected = new ScannerResumes();
+			ScannerResumes actual = new ScannerResumes();
+
+			for (long end = RATE; end <= duration; end += RATE) {
+				long start = end - WINDOW;
+				int from = snapshot.lowerBound(start);
+				int to = snapshot.lowerBound(end);
+				if (from == to)
+					continue;
+				window.moveTo(snapshot, from, to);
+
+				expected.clear();
+				actual.clear();
+				batch.resumeBeaconEvents(SCANNER, snapshot, from, to, start, end, expected);
+				incremental.resumeBeaconEvents(SCANNER, window, start, end, actual);
+				String context = "Attenuation " + attenuation + ", window end " + end;
+				assertEquals(context, expected.size(), actual.size());
+				for (int i = 0; i < expected.size(); i++) {
+					assertEquals(context, expected.getTime(i), actual.getTime(i));
+					assertEquals(context, expected.getRssi(i), actual.getRssi(i));
+					assertEquals(context, expected.getTxpower(i), actual.getTxpower(i));
+				}
+			}
+		}
+	}
+
+	// Three -100 with the same weight: 1/3 of each adds up to -99.99...
+	@Test
+	public void bothModesTruncateTheSameAggregation() {
+		EventSeries series = new EventSeries();
+		for (int i = 0; i < 3; i++)
+			series.add(1000 * i, -100, TXPOWER);
+		EventSnapshot snapshot = series.snapshot();
+		SlidingWindow window = new SlidingWindow();
+		window.moveTo(snapshot, snapshot.getFirst(), snapshot.getEnd());
+
+		ScannerResumes expected = new ScannerResumes();
+		ScannerResumes actual = new ScannerResumes();
+		createLocationService(0, false).resumeBeaconEvents(SCANNER, snapshot, snapshot.getFirst(),
+				snapshot.getEnd(), -WINDOW + 3000, 3000, expected);
+		createLocationService(0, true).resumeBeaconEvents(SCANNER, window, -WINDOW + 3000, 3000, actual);
+		assertEquals(1, expected.size());
+		assertEquals(expected.getRssi(0), actual.getRssi(0));
+	}
+}